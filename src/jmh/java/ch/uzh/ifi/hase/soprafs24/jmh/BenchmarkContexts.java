@@ -0,0 +1,34 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.Application;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * BenchmarkContexts
+ * Boots the application with its in-memory H2 database for the benchmarks
+ * that need the Spring context. The bcrypt work factor is lowered to the
+ * minimum so that hashing does not hide the cost of everything else, and the
+ * login rate limit is off since the benchmarks log in far more often than a
+ * client is allowed to.
+ */
+final class BenchmarkContexts {
+
+  private static final String[] ARGS = {
+      "--server.port=0",
+      "--users.password.bcrypt-strength=4",
+      "--users.login.rate-limit.enabled=false",
+      "--spring.main.banner-mode=off",
+      "--logging.level.root=WARN"
+  };
+
+  private BenchmarkContexts() {
+  }
+
+  static ConfigurableApplicationContext start(WebApplicationType webApplicationType) {
+    return new SpringApplicationBuilder(Application.class)
+        .web(webApplicationType)
+        .run(ARGS);
+  }
+}
@@ -0,0 +1,58 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DTOMapperBenchmark
+ * Measures the generated MapStruct conversions used on every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DTOMapperBenchmark {
+
+  private User user;
+
+  private UserPostDTO userPostDTO;
+
+  @Setup
+  public void setup() {
+    user = new User();
+    user.setId(1L);
+    user.setName("Firstname Lastname");
+    user.setUsername("firstname@lastname");
+    user.setToken("1");
+    user.setStatus(UserStatus.ONLINE);
+    user.setCreationDate(new Date());
+    user.setBirthday(new Date());
+
+    userPostDTO = new UserPostDTO();
+    userPostDTO.setName("Firstname Lastname");
+    userPostDTO.setUsername("firstname@lastname");
+    userPostDTO.setPassword("password");
+  }
+
+  @Benchmark
+  public UserGetDTO convertEntityToUserGetDTO() {
+    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+  }
+
+  @Benchmark
+  public User convertUserPostDTOtoEntity() {
+    return DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
+  }
+}
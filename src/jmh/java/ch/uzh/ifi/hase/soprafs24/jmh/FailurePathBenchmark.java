@@ -0,0 +1,74 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FailurePathBenchmark
+ * Compares the cost of failing a lookup of an unknown user: the
+ * ResponseStatusException with a concatenated message the UserService used to
+ * throw, against the stackless UserNotFoundException. The exception is thrown
+ * {@code depth} frames below the catch, which stand in for the servlet,
+ * filter, interceptor and proxy frames of a real request: filling in the
+ * stack trace grows with the depth, the stackless exception does not.
+ * {@link #domainExceptionMessage()} also formats the message, as the
+ * exception advice does once per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FailurePathBenchmark {
+
+  @Param({ "10", "100" })
+  private int depth;
+
+  // a field, so that the message cannot be folded into a constant
+  private Long userId = 42L;
+
+  @Benchmark
+  public RuntimeException responseStatusException() {
+    try {
+      return throwBelow(depth, false);
+    } catch (ResponseStatusException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public RuntimeException domainException() {
+    try {
+      return throwBelow(depth, true);
+    } catch (UserNotFoundException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public String domainExceptionMessage() {
+    try {
+      return throwBelow(depth, true).getMessage();
+    } catch (UserNotFoundException e) {
+      return e.getMessage();
+    }
+  }
+
+  private RuntimeException throwBelow(int frames, boolean stackless) {
+    if (frames > 0) {
+      return throwBelow(frames - 1, stackless);
+    }
+    if (stackless) {
+      throw UserNotFoundException.byId(userId);
+    }
+    throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User with ID " + userId + " was not found");
+  }
+}
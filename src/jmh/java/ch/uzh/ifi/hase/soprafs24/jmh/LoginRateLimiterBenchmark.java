@@ -0,0 +1,74 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.security.LoginRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoginRateLimiterBenchmark
+ * Measures the cost the login rate limiter adds to an allowed login, for one
+ * caller and for eight concurrent callers spread over 1024 clients, and to a
+ * failed one, which is counted against the username as well. The limits are
+ * set so high that no attempt is ever refused. The allowed path should stay
+ * well below a microsecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoginRateLimiterBenchmark {
+
+  private static final int KEYS = 1_024;
+
+  private LoginRateLimiter rateLimiter;
+
+  private String[] usernames;
+
+  private String[] clientIps;
+
+  @State(Scope.Thread)
+  public static class Caller {
+
+    private int next;
+  }
+
+  @Setup
+  public void setup() {
+    rateLimiter = new LoginRateLimiter(true, Integer.MAX_VALUE, Duration.ofSeconds(1), Integer.MAX_VALUE,
+        Duration.ofSeconds(1), 100_000);
+    usernames = new String[KEYS];
+    clientIps = new String[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      usernames[i] = "username" + i;
+      clientIps[i] = "10.0." + (i / 256) + "." + (i % 256);
+    }
+  }
+
+  @Benchmark
+  public void acquireAllowed(Caller caller) {
+    int key = caller.next++ & (KEYS - 1);
+    rateLimiter.acquire(clientIps[key], usernames[key]);
+  }
+
+  @Benchmark
+  public void acquireAndRecordFailure(Caller caller) {
+    int key = caller.next++ & (KEYS - 1);
+    rateLimiter.acquire(clientIps[key], usernames[key]);
+    rateLimiter.recordFailure(clientIps[key], usernames[key]);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void acquireAllowedContended(Caller caller) {
+    int key = caller.next++ & (KEYS - 1);
+    rateLimiter.acquire(clientIps[key], usernames[key]);
+  }
+}
@@ -0,0 +1,82 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.SignedTokens;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.security.UserTokenCache;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SignedTokenBenchmark
+ * Compares the cost of resolving a token to its principal: the random token
+ * looked up in the database (a token cache miss), the random token found in
+ * the token cache, and the signed token verified with HMAC-SHA256 and the
+ * revocation list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignedTokenBenchmark {
+
+  private ConfigurableApplicationContext context;
+
+  private UserRepository userRepository;
+
+  private UserTokenCache tokenCache;
+
+  private SignedTokens signedTokens;
+
+  private String randomToken;
+
+  private String signedToken;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    context = BenchmarkContexts.start(WebApplicationType.NONE);
+    userRepository = context.getBean(UserRepository.class);
+    tokenCache = context.getBean(UserTokenCache.class);
+    signedTokens = context.getBean(SignedTokens.class);
+
+    User user = new User();
+    user.setName("name");
+    user.setUsername("username");
+    user.setPassword("password");
+    User createdUser = context.getBean(UserService.class).createUser(user);
+    randomToken = createdUser.getToken();
+    signedToken = signedTokens.issue(createdUser.getId());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public User randomTokenLookup() {
+    return userRepository.findByToken(randomToken);
+  }
+
+  @Benchmark
+  public UserPrincipal randomTokenCached() {
+    return tokenCache.get(randomToken, userRepository::findByToken);
+  }
+
+  @Benchmark
+  public UserPrincipal signedTokenVerify() {
+    return signedTokens.verify(signedToken);
+  }
+}
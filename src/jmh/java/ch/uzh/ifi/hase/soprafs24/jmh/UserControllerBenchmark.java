@@ -0,0 +1,113 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/**
+ * UserControllerBenchmark
+ * Measures full round-trips through the UserController with MockMvc: request
+ * mapping, JSON (de)serialization, the service and the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserControllerBenchmark {
+
+  private static final int SEEDED_USERS = 50;
+
+  private final AtomicLong counter = new AtomicLong();
+
+  private ConfigurableApplicationContext context;
+
+  private MockMvc mockMvc;
+
+  private User existingUser;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    context = BenchmarkContexts.start(WebApplicationType.SERVLET);
+    mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+    UserService userService = context.getBean(UserService.class);
+    for (int i = 0; i < SEEDED_USERS; i++) {
+      User user = new User();
+      user.setName("name" + i);
+      user.setUsername("username" + i);
+      user.setPassword("password");
+      existingUser = userService.createUser(user);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public MvcResult getUser() throws Exception {
+    return perform(get("/users/{userId}", existingUser.getId()));
+  }
+
+  @Benchmark
+  public MvcResult getUsersPage() throws Exception {
+    return perform(get("/users").param("limit", String.valueOf(SEEDED_USERS)));
+  }
+
+  @Benchmark
+  public MvcResult createUser() throws Exception {
+    String username = "user" + counter.incrementAndGet();
+    return perform(post("/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"name\":\"name of " + username + "\",\"username\":\"" + username
+            + "\",\"password\":\"password\"}"));
+  }
+
+  @Benchmark
+  public MvcResult loginUser() throws Exception {
+    return perform(post("/login")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"username\":\"" + existingUser.getUsername() + "\",\"password\":\"password\"}"));
+  }
+
+  @Benchmark
+  public MvcResult updateUser() throws Exception {
+    return perform(put("/users/{userId}", existingUser.getId())
+        .header(HttpHeaders.AUTHORIZATION, "Bearer " + existingUser.getToken())
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"birthday\":" + counter.incrementAndGet() + "}"));
+  }
+
+  private MvcResult perform(RequestBuilder request) throws Exception {
+    MvcResult result = mockMvc.perform(request).andReturn();
+    // a failing request would measure the error path instead
+    if (result.getResponse().getStatus() >= 400) {
+      throw new IllegalStateException("Request failed with status " + result.getResponse().getStatus());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,62 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserJsonBenchmark
+ * Measures the Jackson serialization of UserGetDTO lists, configured like the
+ * ObjectMapper Spring Boot creates for the controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserJsonBenchmark {
+
+  @Param({ "10", "100", "1000" })
+  private int users;
+
+  private ObjectWriter listWriter;
+
+  private List<UserGetDTO> userGetDTOs;
+
+  @Setup
+  public void setup() {
+    listWriter = Jackson2ObjectMapperBuilder.json().build().writerFor(new TypeReference<List<UserGetDTO>>() {
+    });
+
+    userGetDTOs = new ArrayList<>(users);
+    for (int i = 0; i < users; i++) {
+      UserGetDTO userGetDTO = new UserGetDTO();
+      userGetDTO.setId((long) i);
+      userGetDTO.setName("name" + i);
+      userGetDTO.setUsername("username" + i);
+      userGetDTO.setToken("token-" + i);
+      userGetDTO.setStatus(i % 2 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+      userGetDTO.setCreationDate(new Date());
+      userGetDTO.setBirthday(new Date());
+      userGetDTOs.add(userGetDTO);
+    }
+  }
+
+  @Benchmark
+  public byte[] serializeUserList() throws Exception {
+    return listWriter.writeValueAsBytes(userGetDTOs);
+  }
+}
@@ -0,0 +1,132 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.controller.UserListCache;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserListCacheBenchmark
+ * Compares reading the full user list for GET /users from the database and
+ * serializing it on every request (the former streamed path) with serving it
+ * from the UserListCache, once for a list that never changes and once with
+ * one changed user every 100 reads. Run with -PjmhProfilers=gc: the cached
+ * reads should allocate next to nothing per operation, whatever the number of
+ * users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserListCacheBenchmark {
+
+  private static final int READS_PER_CHANGE = 100;
+
+  private final OutputStream response = OutputStream.nullOutputStream();
+
+  @Param({ "1000", "10000" })
+  private int users;
+
+  private ConfigurableApplicationContext context;
+
+  private UserService userService;
+
+  private UserListCache userListCache;
+
+  private ObjectWriter userWriter;
+
+  private Long changedUserId;
+
+  private long reads;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    context = BenchmarkContexts.start(WebApplicationType.NONE);
+    userService = context.getBean(UserService.class);
+    userListCache = context.getBean(UserListCache.class);
+    userWriter = context.getBean(ObjectMapper.class).writerFor(UserGetDTO.class)
+        .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    List<User> seededUsers = new ArrayList<>(users);
+    for (int i = 0; i < users; i++) {
+      User user = new User();
+      user.setName("name" + i);
+      user.setUsername("username" + i);
+      user.setPassword("password");
+      user.setToken("token-" + i);
+      user.setStatus(UserStatus.OFFLINE);
+      user.setCreationDate(new Date());
+      seededUsers.add(user);
+    }
+    changedUserId = context.getBean("userRepository", UserRepository.class).saveAll(seededUsers).get(0).getId();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public void streamed() {
+    try {
+      // not closed, that would close the response stream as well
+      JsonGenerator generator = userWriter.getFactory().createGenerator(response);
+      generator.writeStartArray();
+      userService.streamUsers(user -> {
+        try {
+          userWriter.writeValue(generator, DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      generator.writeEndArray();
+      generator.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Benchmark
+  public byte[] cached() throws IOException {
+    byte[] body = userListCache.get(MediaType.APPLICATION_JSON, userWriter).getBody();
+    response.write(body);
+    return body;
+  }
+
+  @Benchmark
+  public byte[] cachedWithChanges() throws IOException {
+    if (++reads % READS_PER_CHANGE == 0) {
+      userListCache.invalidate(changedUserId);
+    }
+    byte[] body = userListCache.get(MediaType.APPLICATION_JSON, userWriter).getBody();
+    response.write(body);
+    return body;
+  }
+}
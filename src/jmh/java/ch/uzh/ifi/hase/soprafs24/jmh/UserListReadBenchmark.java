@@ -0,0 +1,109 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserListReadBenchmark
+ * Compares one page of the user list read as managed entities in a read-write
+ * transaction (the former path) with the read-only projection path of
+ * UserService.getUsers. Run with -PjmhProfilers=gc to get the allocation rate
+ * per operation next to the latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserListReadBenchmark {
+
+  private static final int USERS = 10_000;
+
+  @Param({ "20", "100" })
+  private int pageSize;
+
+  private ConfigurableApplicationContext context;
+
+  private UserService userService;
+
+  private EntityManager entityManager;
+
+  private TransactionTemplate readWriteTransaction;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    context = BenchmarkContexts.start(WebApplicationType.NONE);
+    userService = context.getBean(UserService.class);
+    entityManager = SharedEntityManagerCreator.createSharedEntityManager(
+        context.getBean(EntityManagerFactory.class));
+    readWriteTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+    List<User> users = new ArrayList<>(USERS);
+    for (int i = 0; i < USERS; i++) {
+      User user = new User();
+      user.setName("name" + i);
+      user.setUsername("username" + i);
+      user.setPassword("password");
+      user.setToken("token-" + i);
+      user.setStatus(UserStatus.OFFLINE);
+      user.setCreationDate(new Date());
+      users.add(user);
+    }
+    context.getBean("userRepository", UserRepository.class).saveAll(users);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public List<UserGetDTO> managedEntities() {
+    return readWriteTransaction.execute(status -> {
+      List<User> users = entityManager
+          .createQuery("select u from User u where u.id > :after order by u.id", User.class)
+          .setParameter("after", 0L)
+          .setMaxResults(pageSize)
+          .getResultList();
+      List<UserGetDTO> userGetDTOs = new ArrayList<>(pageSize);
+      for (User user : users) {
+        userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+      }
+      return userGetDTOs;
+    });
+  }
+
+  @Benchmark
+  public List<UserGetDTO> readOnlyProjection() {
+    List<UserGetDTO> userGetDTOs = new ArrayList<>(pageSize);
+    for (UserSummary user : userService.getUsers(0L, pageSize)) {
+      userGetDTOs.add(DTOMapper.INSTANCE.convertSummaryToUserGetDTO(user));
+    }
+    return userGetDTOs;
+  }
+}
@@ -0,0 +1,112 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.config.BinaryFormatConfiguration;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * UserPayloadFormatBenchmark
+ * Measures the CPU time to write 10k users as JSON, CBOR and Smile, with and
+ * without gzip on top, with the ObjectMappers the controllers use. The bytes
+ * on the wire of every combination are reported as the secondary result
+ * "bytes".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserPayloadFormatBenchmark {
+
+  private static final int USERS = 10_000;
+
+  @Param({ "json", "cbor", "smile" })
+  private String format;
+
+  @Param({ "false", "true" })
+  private boolean gzip;
+
+  private ObjectWriter listWriter;
+
+  private List<UserGetDTO> userGetDTOs;
+
+  @Setup
+  public void setup() throws IOException {
+    listWriter = objectMapper(format).writerFor(new TypeReference<List<UserGetDTO>>() {
+    });
+
+    userGetDTOs = new ArrayList<>(USERS);
+    for (int i = 0; i < USERS; i++) {
+      UserGetDTO userGetDTO = new UserGetDTO();
+      userGetDTO.setId((long) i);
+      userGetDTO.setName("name" + i);
+      userGetDTO.setUsername("username" + i);
+      userGetDTO.setStatus(i % 2 == 0 ? UserStatus.ONLINE : UserStatus.OFFLINE);
+      userGetDTO.setCreationDate(new Date(1_700_000_000_000L + i * 60_000L));
+      userGetDTO.setBirthday(i % 3 == 0 ? null : new Date(946_684_800_000L + i * 86_400_000L));
+      userGetDTOs.add(userGetDTO);
+    }
+  }
+
+  @Benchmark
+  public byte[] serialize(WireSize wireSize) throws IOException {
+    byte[] body;
+    if (gzip) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzipStream = new GZIPOutputStream(bytes)) {
+        listWriter.writeValue(gzipStream, userGetDTOs);
+      }
+      body = bytes.toByteArray();
+    } else {
+      body = listWriter.writeValueAsBytes(userGetDTOs);
+    }
+    wireSize.bytes = body.length;
+    return body;
+  }
+
+  /**
+   * The size of the last serialized list, the same for every operation.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class WireSize {
+
+    public long bytes;
+  }
+
+  private static ObjectMapper objectMapper(String format) {
+    switch (format) {
+      case "cbor":
+        return BinaryFormatConfiguration.compactObjectMapper(Jackson2ObjectMapperBuilder.json(), new CBORFactory());
+      case "smile":
+        return BinaryFormatConfiguration.compactObjectMapper(Jackson2ObjectMapperBuilder.json(), new SmileFactory());
+      default:
+        // Spring Boot writes dates as ISO strings in JSON
+        return Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    }
+  }
+}
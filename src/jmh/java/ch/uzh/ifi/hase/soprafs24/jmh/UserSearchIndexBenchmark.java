@@ -0,0 +1,70 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchHit;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserSearchIndexBenchmark
+ * Measures prefix and fuzzy queries of the search index filled with synthetic
+ * users. The latency target is below 5 ms per query at one million users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class UserSearchIndexBenchmark {
+
+  private static final String[] SYLLABLES = { "an", "be", "cho", "da", "el", "fi", "go", "ha", "ia", "jo", "ka",
+      "li", "mo", "na", "or", "pe", "qu", "ra", "si", "to", "ul", "vi", "wa", "xe", "yo", "zu" };
+
+  private static final int RESULTS = 10;
+
+  @Param({ "100000", "1000000" })
+  private int users;
+
+  private UserSearchIndex userSearchIndex;
+
+  @Setup
+  public void setup() {
+    userSearchIndex = new UserSearchIndex(null);
+    Random random = new Random(42);
+    for (long id = 1; id <= users; id++) {
+      String first = word(random);
+      String last = word(random);
+      userSearchIndex.index(id, first + last + id, first + " " + last);
+    }
+  }
+
+  @Benchmark
+  public List<UserSearchHit> prefix() {
+    return userSearchIndex.search("joka", RESULTS);
+  }
+
+  @Benchmark
+  public List<UserSearchHit> fuzzy() {
+    // a typo that matches no prefix
+    return userSearchIndex.search("jkoali", RESULTS);
+  }
+
+  private static String word(Random random) {
+    StringBuilder word = new StringBuilder();
+    int syllables = 2 + random.nextInt(3);
+    for (int i = 0; i < syllables; i++) {
+      word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+    }
+    return word.toString();
+  }
+}
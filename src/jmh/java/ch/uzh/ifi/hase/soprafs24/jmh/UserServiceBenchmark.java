@@ -0,0 +1,97 @@
+package ch.uzh.ifi.hase.soprafs24.jmh;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserServiceBenchmark
+ * Measures createUser, loginUser and updateUser of the UserService bean,
+ * including its transactions, against the in-memory H2 database, and a login
+ * with an unknown username, the failure path of username probing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserServiceBenchmark {
+
+  private static final String PASSWORD = "password";
+
+  private final AtomicLong counter = new AtomicLong();
+
+  private ConfigurableApplicationContext context;
+
+  private UserService userService;
+
+  private User existingUser;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    context = BenchmarkContexts.start(WebApplicationType.NONE);
+    userService = context.getBean(UserService.class);
+    existingUser = userService.createUser(newUser("existing"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public User createUser() {
+    return userService.createUser(newUser("user" + counter.incrementAndGet()));
+  }
+
+  @Benchmark
+  public User loginUser() {
+    User loginUser = new User();
+    loginUser.setUsername(existingUser.getUsername());
+    loginUser.setPassword(PASSWORD);
+    return userService.loginUser(loginUser);
+  }
+
+  @Benchmark
+  public RuntimeException loginUnknownUser() {
+    User loginUser = new User();
+    loginUser.setUsername("unknown");
+    loginUser.setPassword(PASSWORD);
+    try {
+      userService.loginUser(loginUser);
+      throw new IllegalStateException("the user should not exist");
+    } catch (UserNotFoundException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public User updateUser() {
+    // a new birthday every time, so that every call writes
+    User userInput = new User();
+    userInput.setBirthday(new Date(counter.incrementAndGet()));
+    return userService.updateUser(existingUser.getId(), userInput, UserPrincipal.of(existingUser));
+  }
+
+  private static User newUser(String username) {
+    User user = new User();
+    user.setName("name of " + username);
+    user.setUsername(username);
+    user.setPassword(PASSWORD);
+    return user;
+  }
+}
@@ -0,0 +1,46 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Binary Format Configuration
+ * Lets clients ask for CBOR (application/cbor) or Smile
+ * (application/x-jackson-smile) instead of JSON with the Accept header, and
+ * send request bodies in them. Both are written by Jackson from the same DTOs
+ * and with the same settings as JSON, except that dates are epoch
+ * milliseconds instead of ISO strings. JSON stays the default.
+ */
+@Configuration
+public class BinaryFormatConfiguration {
+
+  public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+  // the builder is a prototype bean carrying Spring Boot's Jackson settings
+  @Bean
+  public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2CborHttpMessageConverter(compactObjectMapper(builder, new CBORFactory()));
+  }
+
+  @Bean
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2SmileHttpMessageConverter(compactObjectMapper(builder, new SmileFactory()));
+  }
+
+  /**
+   * Builds the ObjectMapper of a binary format.
+   */
+  public static ObjectMapper compactObjectMapper(Jackson2ObjectMapperBuilder builder, JsonFactory factory) {
+    return builder.factory(factory)
+        .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+  }
+}
@@ -0,0 +1,87 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replica DataSource Configuration
+ * Active when users.datasource.replica-urls lists at least one replica. The
+ * primary pool is built from the spring.datasource.* properties as usual, and
+ * every replica gets its own read-only pool with the same credentials. All
+ * pools are sized by the spring.datasource.hikari.* properties.
+ * Transactions marked @Transactional(readOnly = true) then read from the
+ * replicas, all other work goes to the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "users.datasource.replica-urls")
+public class ReplicaDataSourceConfiguration {
+
+  private final List<HikariDataSource> pools = new ArrayList<>();
+
+  private ReplicaRoutingDataSource routingDataSource;
+
+  @Bean
+  @Primary
+  public DataSource dataSource(DataSourceProperties properties,
+                               Environment environment,
+                               @Value("${users.datasource.replica-urls}") String[] replicaUrls,
+                               @Value("${users.datasource.replica-lag-query:}") String lagQuery,
+                               @Value("${users.datasource.replica-max-lag:PT5S}") Duration maxLag) {
+    Binder binder = Binder.get(environment);
+    HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+    primary.setPoolName("primary");
+    pools.add(primary);
+
+    List<DataSource> replicas = new ArrayList<>(replicaUrls.length);
+    for (int i = 0; i < replicaUrls.length; i++) {
+      HikariDataSource replica = DataSourceBuilder.create()
+          .type(HikariDataSource.class)
+          .driverClassName(properties.determineDriverClassName())
+          .url(replicaUrls[i].trim())
+          .username(properties.determineUsername())
+          .password(properties.determinePassword())
+          .build();
+      binder.bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+      replica.setPoolName("replica-" + i);
+      replica.setReadOnly(true);
+      replicas.add(replica);
+      pools.add(replica);
+    }
+
+    routingDataSource = new ReplicaRoutingDataSource(primary, replicas, lagQuery, maxLag);
+    return new LazyConnectionDataSourceProxy(routingDataSource);
+  }
+
+  @Scheduled(fixedDelayString = "${users.datasource.replica-check-interval:PT10S}")
+  public void checkReplicas() {
+    if (routingDataSource != null) {
+      routingDataSource.checkReplicas();
+    }
+  }
+
+  // the pools are not beans themselves, so nobody else closes them
+  @PreDestroy
+  public void closePools() {
+    for (HikariDataSource pool : pools) {
+      pool.close();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replica Routing DataSource
+ * Sends connections of read-only transactions round-robin to the eligible
+ * replicas and everything else to the primary. {@link #checkReplicas()}
+ * decides which replicas are eligible: a replica has to answer, and if a lag
+ * query is configured (it returns the replication lag in seconds), its lag
+ * must not exceed the tolerated maximum. Without an eligible replica, reads
+ * fall back to the primary.
+ * The routing key is read when the connection is fetched, so this DataSource
+ * must be wrapped in a LazyConnectionDataSourceProxy: the transaction manager
+ * asks for the connection before the transaction is flagged read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  static final String PRIMARY = "primary";
+
+  private final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+  private final Map<String, DataSource> replicas = new LinkedHashMap<>();
+
+  private final String lagQuery;
+
+  private final long maxLagMillis;
+
+  private final AtomicInteger next = new AtomicInteger();
+
+  private volatile List<String> eligibleReplicas;
+
+  public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, String lagQuery, Duration maxLag) {
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(PRIMARY, primary);
+    for (int i = 0; i < replicas.size(); i++) {
+      String key = "replica-" + i;
+      this.replicas.put(key, replicas.get(i));
+      targets.put(key, replicas.get(i));
+    }
+    this.lagQuery = lagQuery == null || lagQuery.trim().isEmpty() ? null : lagQuery;
+    this.maxLagMillis = maxLag.toMillis();
+    // replicas are trusted until the first check says otherwise
+    this.eligibleReplicas = Collections.unmodifiableList(new ArrayList<>(this.replicas.keySet()));
+
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return PRIMARY;
+    }
+    List<String> eligible = eligibleReplicas;
+    if (eligible.isEmpty()) {
+      return PRIMARY;
+    }
+    return eligible.get(Math.floorMod(next.getAndIncrement(), eligible.size()));
+  }
+
+  /**
+   * Probes every replica and updates the set that reads are routed to.
+   */
+  public void checkReplicas() {
+    List<String> eligible = new ArrayList<>(replicas.size());
+    for (Map.Entry<String, DataSource> replica : replicas.entrySet()) {
+      if (isEligible(replica.getKey(), replica.getValue())) {
+        eligible.add(replica.getKey());
+      }
+    }
+    eligibleReplicas = Collections.unmodifiableList(eligible);
+  }
+
+  /**
+   * Keys of the replicas reads are currently routed to.
+   */
+  public List<String> eligibleReplicas() {
+    return eligibleReplicas;
+  }
+
+  private boolean isEligible(String key, DataSource replica) {
+    try (Connection connection = replica.getConnection()) {
+      if (lagQuery == null) {
+        return connection.isValid(1);
+      }
+      try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(lagQuery)) {
+        double lagSeconds = resultSet.next() ? resultSet.getDouble(1) : Double.NaN;
+        // no lag reported means the replica cannot tell how far behind it is
+        if (resultSet.wasNull() || Double.isNaN(lagSeconds) || lagSeconds * 1000 > maxLagMillis) {
+          log.warn("Replica {} lags {} s behind the primary, reading from the primary instead", key, lagSeconds);
+          return false;
+        }
+        return true;
+      }
+    } catch (SQLException e) {
+      log.warn("Replica {} is not available, reading from the primary instead: {}", key, e.getMessage());
+      return false;
+    }
+  }
+}
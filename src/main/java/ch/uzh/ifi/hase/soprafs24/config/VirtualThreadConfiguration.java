@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual Thread Configuration
+ * Opt-in execution mode (spring.threads.virtual.enabled=true) in which Tomcat
+ * handles every request on its own virtual thread instead of the bounded
+ * platform thread pool. Repository calls block on the request thread, so they
+ * run on virtual threads as well; the JDBC pool size
+ * (spring.datasource.hikari.maximum-pool-size) becomes the concurrency limit
+ * for database work. Asynchronous MVC requests (Callable, StreamingResponseBody)
+ * are executed on virtual threads, too; GET /users is not one of them, it
+ * writes the cached bytes of the UserListCache on the request thread.
+ * Virtual threads need a Java 21 runtime. The code is compiled for Java 17 and
+ * looks the executor up reflectively, so the same jar runs on both; enabling
+ * the mode on an older runtime fails at startup.
+ * The property name matches the one of Spring Boot 3.2+, which supports the
+ * mode natively, so this class can be dropped after that upgrade.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService virtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("spring.threads.virtual.enabled=true requires Java 21 or newer, but the "
+          + "application runs on Java " + Runtime.version().feature(), e);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Could not create the virtual thread executor", e);
+    }
+  }
+
+  @Bean
+  public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(
+      ExecutorService virtualThreadExecutor) {
+    return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+  }
+
+  @Bean
+  public WebMvcConfigurer virtualThreadAsyncSupport(ExecutorService virtualThreadExecutor) {
+    return new WebMvcConfigurer() {
+      @Override
+      public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(virtualThreadExecutor));
+      }
+    };
+  }
+}
@@ -1,16 +1,54 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.config.BinaryFormatConfiguration;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.metrics.SqlStatementBudget;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserBatchResultDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO; 
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSearchResultDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.security.Authenticated;
+import ch.uzh.ifi.hase.soprafs24.security.AuthenticationInterceptor;
+import ch.uzh.ifi.hase.soprafs24.security.LoginRateLimiter;
+import ch.uzh.ifi.hase.soprafs24.security.SignedTokens;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceRegistry;
+import ch.uzh.ifi.hase.soprafs24.service.UserBatchResult;
+import ch.uzh.ifi.hase.soprafs24.service.UserBatchService;
+import ch.uzh.ifi.hase.soprafs24.service.UserEventBroadcaster;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchHit;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchIndex;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * User Controller
@@ -22,35 +60,152 @@ import java.util.List;
 @RestController
 public class UserController {
 
+  static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+  static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+  static final MediaType APPLICATION_SMILE = MediaType.valueOf(BinaryFormatConfiguration.APPLICATION_SMILE_VALUE);
+
   private final UserService userService;
 
-  UserController(UserService userService) {
+  private final UserBatchService userBatchService;
+
+  private final PresenceRegistry presenceRegistry;
+
+  private final UserEventBroadcaster userEventBroadcaster;
+
+  private final UserSearchIndex userSearchIndex;
+
+  private final LoginRateLimiter loginRateLimiter;
+
+  private final SignedTokens signedTokens;
+
+  private final UserListCache userListCache;
+
+  // media type -> writer, for the endpoints that write users without a message converter
+  private final Map<MediaType, ObjectWriter> userWriters = new LinkedHashMap<>();
+
+  private final ObjectReader userPostReader;
+
+  private final int maxPageSize;
+
+  UserController(UserService userService, UserBatchService userBatchService, PresenceRegistry presenceRegistry,
+                 UserEventBroadcaster userEventBroadcaster, UserSearchIndex userSearchIndex,
+                 LoginRateLimiter loginRateLimiter, SignedTokens signedTokens, UserListCache userListCache,
+                 ObjectMapper objectMapper,
+                 ObjectProvider<MappingJackson2CborHttpMessageConverter> cborConverter,
+                 ObjectProvider<MappingJackson2SmileHttpMessageConverter> smileConverter,
+                 @Value("${users.page.max-limit:100}") int maxPageSize) {
     this.userService = userService;
+    this.userBatchService = userBatchService;
+    this.presenceRegistry = presenceRegistry;
+    this.userEventBroadcaster = userEventBroadcaster;
+    this.userSearchIndex = userSearchIndex;
+    this.loginRateLimiter = loginRateLimiter;
+    this.signedTokens = signedTokens;
+    this.userListCache = userListCache;
+    this.userPostReader = objectMapper.readerFor(UserPostDTO.class);
+    // the first format is the default
+    this.userWriters.put(MediaType.APPLICATION_JSON, userWriterOf(objectMapper));
+    cborConverter.ifAvailable(converter ->
+        userWriters.put(MediaType.APPLICATION_CBOR, userWriterOf(converter.getObjectMapper())));
+    smileConverter.ifAvailable(converter ->
+        userWriters.put(APPLICATION_SMILE, userWriterOf(converter.getObjectMapper())));
+    this.maxPageSize = maxPageSize;
   }
 
-  @GetMapping("/users")
-  @ResponseStatus(HttpStatus.OK)
+  @SqlStatementBudget(1)
+  @GetMapping(value = "/users", params = "limit")
   @ResponseBody
-  public List<UserGetDTO> getAllUsers() {
-    // fetch all users in the internal representation
-    List<User> users = userService.getUsers();
-    List<UserGetDTO> userGetDTOs = new ArrayList<>();
+  public ResponseEntity<List<UserGetDTO>> getUsersPage(@RequestParam(required = false) Long after,
+                                                       @RequestParam int limit) {
+    int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+    // fetch one page of users as read-only projections
+    List<UserSummary> users = userService.getUsers(after, pageSize);
+    List<UserGetDTO> userGetDTOs = new ArrayList<>(users.size());
 
     // convert each user to the API representation
-    for (User user : users) {
-      userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    for (UserSummary user : users) {
+      UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertSummaryToUserGetDTO(user);
+      userGetDTO.setStatus(presenceRegistry.statusOf(user.getId()));
+      userGetDTOs.add(userGetDTO);
+    }
+
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    // a full page means there might be more -> hand out the cursor for the next one
+    if (users.size() == pageSize) {
+      response.header(NEXT_CURSOR_HEADER, String.valueOf(users.get(users.size() - 1).getId()));
+    }
+    return response.body(userGetDTOs);
+  }
+
+  @GetMapping(value = "/users", produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+      BinaryFormatConfiguration.APPLICATION_SMILE_VALUE })
+  @ResponseBody
+  public ResponseEntity<byte[]> getAllUsers(@RequestHeader(value = HttpHeaders.ACCEPT, required = false)
+                                            String accept,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                            String acceptEncoding) {
+    MediaType mediaType = userMediaTypeFor(accept);
+    // the list is served from the cache as it is, the array is written to
+    // the response without being copied or converted
+    UserListCache.Snapshot users = userListCache.get(mediaType, userWriters.get(mediaType));
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .contentType(mediaType)
+        .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+    byte[] gzipped = acceptsGzip(acceptEncoding) ? userListCache.gzipped(users) : null;
+    if (gzipped != null) {
+      // the server does not compress a response that already has an encoding
+      return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzipped);
+    }
+    return response.body(users.getBody());
+  }
+
+  @GetMapping(value = "/users/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamUserEvents(@RequestHeader(value = LAST_EVENT_ID_HEADER, required = false)
+                                     Long lastEventId) {
+    // clients load GET /users once and then apply the pushed changes instead of polling
+    return userEventBroadcaster.subscribe(lastEventId);
+  }
+
+  @SqlStatementBudget(0)
+  @GetMapping("/users/search")
+  @ResponseBody
+  public List<UserSearchResultDTO> searchUsers(@RequestParam String q,
+                                               @RequestParam(defaultValue = "10") int limit) {
+    // answered from the in-memory index, the database is not queried
+    List<UserSearchHit> hits = userSearchIndex.search(q, Math.max(1, Math.min(limit, maxPageSize)));
+    List<UserSearchResultDTO> resultDTOs = new ArrayList<>(hits.size());
+    for (UserSearchHit hit : hits) {
+      UserSearchResultDTO resultDTO = DTOMapper.INSTANCE.convertSearchHitToDTO(hit);
+      resultDTO.setStatus(presenceRegistry.statusOf(hit.getId()));
+      resultDTOs.add(resultDTO);
     }
-    return userGetDTOs;
+    return resultDTOs;
   }
 
+  @SqlStatementBudget(1)
   @GetMapping("/users/{userId}")
-  @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public UserGetDTO getUser(@PathVariable Long userId) {
+  public ResponseEntity<UserGetDTO> getUser(@PathVariable Long userId,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                            String ifNoneMatch) {
     User user = userService.getUserById(userId);
-    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+    UserStatus status = presenceRegistry.statusOf(userId);
+    String eTag = eTagOf(user, status);
+
+    // the client already has this version -> answer without serializing the user
+    if (eTag != null && ifNoneMatch != null && noneMatchFails(ifNoneMatch, eTag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+    }
+    UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+    userGetDTO.setStatus(status);
+    return withETag(ResponseEntity.ok(), eTag).body(userGetDTO);
   }
 
+  @SqlStatementBudget(2)
   @PostMapping("/users")
   @ResponseStatus(HttpStatus.CREATED)
   @ResponseBody
@@ -61,30 +216,212 @@ public class UserController {
     // create user
     User createdUser = userService.createUser(userInput);
     // convert internal representation of user back to API
-    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(createdUser);
+    return withSessionToken(toUserGetDTO(createdUser), createdUser);
+  }
+
+  @PostMapping(value = "/users/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public List<UserBatchResultDTO> createUsers(@RequestBody List<UserPostDTO> userPostDTOs) {
+    return importUsers(userPostDTOs);
+  }
+
+  @PostMapping(value = "/users/batch", consumes = APPLICATION_NDJSON_VALUE)
+  @ResponseStatus(HttpStatus.OK)
+  @ResponseBody
+  public List<UserBatchResultDTO> createUsersFromNdjson(InputStream body) throws IOException {
+    // newline-delimited JSON: one UserPostDTO per line
+    try (MappingIterator<UserPostDTO> userPostDTOs = userPostReader.readValues(body)) {
+      return importUsers(userPostDTOs.readAll());
+    }
   }
 
+  @SqlStatementBudget(2)
   @PostMapping("/login")
   @ResponseStatus(HttpStatus.OK)
   @ResponseBody
-  public UserGetDTO loginUser(@RequestBody UserPostDTO userPostDTO) {
+  public UserGetDTO loginUser(@RequestBody UserPostDTO userPostDTO, HttpServletRequest request) {
+    // throttled before the user is looked up and the password is hashed
+    loginRateLimiter.acquire(request.getRemoteAddr(), userPostDTO.getUsername());
     User userInput = DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO);
-    User loggedInUser = userService.loginUser(userInput);
-    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(loggedInUser);
+    User loggedInUser;
+    try {
+      loggedInUser = userService.loginUser(userInput);
+    } catch (UserNotFoundException | InvalidCredentialsException e) {
+      // only failures count against the username, see LoginRateLimiter
+      loginRateLimiter.recordFailure(request.getRemoteAddr(), userPostDTO.getUsername());
+      throw e;
+    }
+    return withSessionToken(toUserGetDTO(loggedInUser), loggedInUser);
   }
 
+  @Authenticated
+  @SqlStatementBudget(2)
+  @PostMapping("/logout")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void logoutUser(@RequestAttribute(AuthenticationInterceptor.PRINCIPAL_ATTRIBUTE) UserPrincipal principal) {
+    userService.logoutUser(principal);
+    // a random token was replaced, which is not announced by an event
+    userListCache.invalidate(principal.getId());
+  }
+
+  @Authenticated(owner = "userId")
+  @SqlStatementBudget(3)
   @PutMapping("/users/{userId}")
-  @ResponseStatus(HttpStatus.OK)  
   @ResponseBody
-  public UserGetDTO updateUser(@PathVariable Long userId,
-                               @RequestBody UserPutDTO userPutDTO,
-                               @RequestHeader("Authorization") String token) {
+  public ResponseEntity<UserGetDTO> updateUser(@PathVariable Long userId,
+                                               @RequestBody UserPutDTO userPutDTO,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                               String ifMatch,
+                                               @RequestAttribute(AuthenticationInterceptor.PRINCIPAL_ATTRIBUTE)
+                                               UserPrincipal principal) {
     User userInput = DTOMapper.INSTANCE.convertUserPutDTOtoEntity(userPutDTO);
-    User updatedUser = userService.updateUser(userId, userInput, token);
+    User updatedUser = userService.updateUser(userId, userInput, principal, expectedVersionOf(ifMatch));
+
+    UserGetDTO userGetDTO = toUserGetDTO(updatedUser);
+    return withETag(ResponseEntity.ok(), eTagOf(updatedUser, userGetDTO.getStatus())).body(userGetDTO);
+  }
+
+  private List<UserBatchResultDTO> importUsers(List<UserPostDTO> userPostDTOs) {
+    // convert API users to internal representation
+    List<User> userInputs = new ArrayList<>(userPostDTOs.size());
+    for (UserPostDTO userPostDTO : userPostDTOs) {
+      userInputs.add(userPostDTO == null ? null : DTOMapper.INSTANCE.convertUserPostDTOtoEntity(userPostDTO));
+    }
+
+    List<UserBatchResult> results = userBatchService.createUsers(userInputs);
+    List<UserBatchResultDTO> resultDTOs = new ArrayList<>(results.size());
+    for (UserBatchResult result : results) {
+      resultDTOs.add(DTOMapper.INSTANCE.convertBatchResultToDTO(result));
+    }
+    return resultDTOs;
+  }
+
+  /**
+   * Converts a user to its API representation. The status is taken from the
+   * presence registry, the persisted one lags behind.
+   */
+  private UserGetDTO toUserGetDTO(User user) {
+    UserGetDTO userGetDTO = DTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+    userGetDTO.setStatus(presenceRegistry.statusOf(user.getId()));
+    return userGetDTO;
+  }
+
+  /**
+   * Replaces the stored random token with a newly issued signed one while
+   * signed tokens are enabled.
+   */
+  private UserGetDTO withSessionToken(UserGetDTO userGetDTO, User user) {
+    if (signedTokens.isEnabled()) {
+      userGetDTO.setToken(signedTokens.issue(user.getId()));
+    }
+    return userGetDTO;
+  }
 
-    return DTOMapper.INSTANCE.convertEntityToUserGetDTO(updatedUser);
+  /**
+   * The strong entity tag of a user covers everything that is served: the
+   * version of the row and the current presence status, e.g. "3-ONLINE".
+   */
+  static String eTagOf(User user, UserStatus status) {
+    return user.getVersion() == null ? null : "\"" + user.getVersion() + "-" + status + "\"";
   }
 
+  private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder response, String eTag) {
+    // the representation depends on the Accept header, caches must keep them apart
+    response.varyBy(HttpHeaders.ACCEPT);
+    return eTag == null ? response : response.eTag(eTag);
+  }
+
+  /**
+   * If-None-Match uses the weak comparison: W/"3" matches "3".
+   */
+  private static boolean noneMatchFails(String ifNoneMatch, String eTag) {
+    for (String candidate : ifNoneMatch.split(",")) {
+      String trimmed = candidate.trim();
+      if (trimmed.startsWith("W/")) {
+        trimmed = trimmed.substring(2);
+      }
+      if (trimmed.equals("*") || trimmed.equals(eTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Translates an If-Match header into the version the client expects.
+   * Returns null if the header is absent or "*". If-Match uses the strong
+   * comparison, so a weak or unknown entity tag can never match.
+   */
+  private static Long expectedVersionOf(String ifMatch) {
+    if (ifMatch == null || ifMatch.trim().equals("*")) {
+      return null;
+    }
+    String eTag = ifMatch.trim();
+    if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+      // only the version part guards an update, the presence status changes by itself
+      String opaqueTag = eTag.substring(1, eTag.length() - 1);
+      int separator = opaqueTag.indexOf('-');
+      try {
+        return Long.valueOf(separator < 0 ? opaqueTag : opaqueTag.substring(0, separator));
+      } catch (NumberFormatException e) {
+        // falls through to the precondition failure below
+      }
+    }
+    throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+        "If-Match " + ifMatch + " does not match the current version");
+  }
+
+  /**
+   * Picks the format of the first acceptable media type, in the order of the
+   * client's preference. No Accept header means JSON.
+   */
+  private MediaType userMediaTypeFor(String accept) {
+    if (accept == null || accept.isEmpty()) {
+      return MediaType.APPLICATION_JSON;
+    }
+    List<MediaType> acceptedTypes = MediaType.parseMediaTypes(accept);
+    MediaType.sortBySpecificityAndQuality(acceptedTypes);
+    // q=0 refuses a type, also when a wildcard of the header would match it
+    List<MediaType> refusedTypes = new ArrayList<>();
+    for (MediaType acceptedType : acceptedTypes) {
+      if (acceptedType.getQualityValue() == 0) {
+        refusedTypes.add(acceptedType);
+      }
+    }
+    for (MediaType acceptedType : acceptedTypes) {
+      if (refusedTypes.contains(acceptedType)) {
+        continue;
+      }
+      for (MediaType mediaType : userWriters.keySet()) {
+        if (acceptedType.isCompatibleWith(mediaType)
+            && refusedTypes.stream().noneMatch(refused -> refused.includes(mediaType))) {
+          return mediaType;
+        }
+      }
+    }
+    throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Users are served as " + userWriters.keySet());
+  }
 
-  
+  /**
+   * Whether the Accept-Encoding header allows gzip, i.e. names it or * without
+   * q=0.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parameters = coding.split(";");
+      String name = parameters[0].trim();
+      if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+        return parameters.length < 2 || !parameters[1].trim().matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  private static ObjectWriter userWriterOf(ObjectMapper objectMapper) {
+    return objectMapper.writerFor(UserGetDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
 }
\ No newline at end of file
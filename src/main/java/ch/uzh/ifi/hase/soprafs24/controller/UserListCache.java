@@ -0,0 +1,248 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceRegistry;
+import ch.uzh.ifi.hase.soprafs24.service.UserEvent;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * User List Cache
+ * Keeps the response of GET /users serialized, so that reading the list does
+ * not touch the database and builds neither DTOs nor JSON: the cached bytes
+ * are written to the response as they are, and with gzip for the clients that
+ * accept it, compressed once instead of per request.
+ * The users are kept as DTOs ordered by id and patched with the
+ * {@link UserEvent}s: a created or updated user is reloaded alone with the
+ * next read, a status change only makes the list be serialized again. Users
+ * are always read from the primary database, also when all of them are read
+ * again, since a replica may still have the rows as they were before the
+ * events. Every format is serialized at most once per change, on the first
+ * read after it.
+ * The status of a user is the one of the PresenceRegistry when the list was
+ * serialized; a user going offline shows up with the STATUS_CHANGED event of
+ * the next presence flush.
+ */
+@Component
+public class UserListCache {
+
+  // more stale users than this are reloaded by reading all users again
+  static final int MAX_RELOADED_USERS = 1_000;
+
+  private final UserService userService;
+
+  private final PresenceRegistry presenceRegistry;
+
+  private final boolean gzipEnabled;
+
+  private final long gzipMinSize;
+
+  // guarded by this, like loaded
+  private final NavigableMap<Long, UserGetDTO> users = new TreeMap<>();
+
+  private boolean loaded;
+
+  private final Set<Long> staleUsers = ConcurrentHashMap.newKeySet();
+
+  // incremented by every change, a snapshot of an older version is rebuilt
+  private final AtomicLong version = new AtomicLong();
+
+  private final Map<MediaType, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final LongAdder buildCount = new LongAdder();
+
+  public UserListCache(UserService userService, PresenceRegistry presenceRegistry,
+                       @Value("${users.list-cache.gzip:true}") boolean gzipEnabled,
+                       @Value("${server.compression.min-response-size:2KB}") DataSize gzipMinSize) {
+    this.userService = userService;
+    this.presenceRegistry = presenceRegistry;
+    this.gzipEnabled = gzipEnabled;
+    this.gzipMinSize = gzipMinSize.toBytes();
+  }
+
+  @TransactionalEventListener(fallbackExecution = true,
+      condition = "#event.type != T(ch.uzh.ifi.hase.soprafs24.constant.UserEventType).STATUS_CHANGED")
+  public void onUserChanged(UserEvent event) {
+    invalidate(event.getUserId());
+  }
+
+  @EventListener(condition = "#event.type == T(ch.uzh.ifi.hase.soprafs24.constant.UserEventType).STATUS_CHANGED")
+  public void onStatusChanged(UserEvent event) {
+    version.incrementAndGet();
+  }
+
+  /**
+   * Reloads the user with the next read. For changes that are not announced
+   * by an event, e.g. the new token after a logout.
+   */
+  public void invalidate(Long userId) {
+    staleUsers.add(userId);
+    version.incrementAndGet();
+  }
+
+  /**
+   * Reloads all users with the next read.
+   */
+  public synchronized void invalidateAll() {
+    loaded = false;
+    version.incrementAndGet();
+  }
+
+  /**
+   * Returns the user list serialized with the given writer, which has to be
+   * the same for every call with the media type.
+   */
+  public Snapshot get(MediaType mediaType, ObjectWriter userWriter) {
+    Snapshot snapshot = snapshots.get(mediaType);
+    if (snapshot != null && snapshot.version == version.get()) {
+      hitCount.increment();
+      return snapshot;
+    }
+    return build(mediaType, userWriter);
+  }
+
+  /**
+   * Returns the snapshot compressed with gzip, or null if compression is off
+   * or the list is too short to be worth it.
+   */
+  public byte[] gzipped(Snapshot snapshot) {
+    if (!gzipEnabled || snapshot.body.length < gzipMinSize) {
+      return null;
+    }
+    byte[] gzipped = snapshot.gzipped;
+    if (gzipped == null) {
+      // two readers may both compress the same snapshot, the result is equal
+      gzipped = gzip(snapshot.body);
+      snapshot.gzipped = gzipped;
+    }
+    return gzipped;
+  }
+
+  public long hitCount() {
+    return hitCount.sum();
+  }
+
+  public long buildCount() {
+    return buildCount.sum();
+  }
+
+  private synchronized Snapshot build(MediaType mediaType, ObjectWriter userWriter) {
+    // read first: a change from now on leaves the snapshot outdated
+    long currentVersion = version.get();
+    Snapshot snapshot = snapshots.get(mediaType);
+    if (snapshot != null && snapshot.version == currentVersion) {
+      hitCount.increment();
+      return snapshot;
+    }
+    refreshUsers();
+    for (UserGetDTO user : users.values()) {
+      user.setStatus(presenceRegistry.statusOf(user.getId()));
+    }
+    int expectedSize = snapshot == null ? 8_192 : snapshot.body.length;
+    snapshot = new Snapshot(currentVersion, serialize(userWriter, expectedSize));
+    snapshots.put(mediaType, snapshot);
+    buildCount.increment();
+    return snapshot;
+  }
+
+  private void refreshUsers() {
+    if (!loaded || staleUsers.size() > MAX_RELOADED_USERS) {
+      // users changed while streaming are stale again afterwards
+      staleUsers.clear();
+      users.clear();
+      userService.streamUsers(user -> users.put(user.getId(), DTOMapper.INSTANCE.convertEntityToUserGetDTO(user)));
+      loaded = true;
+      return;
+    }
+    if (staleUsers.isEmpty()) {
+      return;
+    }
+    List<Long> userIds = new ArrayList<>(staleUsers);
+    staleUsers.removeAll(userIds);
+    List<User> reloadedUsers;
+    try {
+      reloadedUsers = userService.getUsersByIds(userIds);
+    } catch (RuntimeException e) {
+      staleUsers.addAll(userIds);
+      throw e;
+    }
+    // a user that is not found any more is dropped from the list
+    for (Long userId : userIds) {
+      users.remove(userId);
+    }
+    for (User user : reloadedUsers) {
+      users.put(user.getId(), DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    }
+  }
+
+  private byte[] serialize(ObjectWriter userWriter, int expectedSize) {
+    ByteArrayOutputStream body = new ByteArrayOutputStream(expectedSize);
+    try (JsonGenerator generator = userWriter.getFactory().createGenerator(body)) {
+      generator.writeStartArray();
+      for (UserGetDTO user : users.values()) {
+        userWriter.writeValue(generator, user);
+      }
+      generator.writeEndArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return body.toByteArray();
+  }
+
+  private static byte[] gzip(byte[] body) {
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+      gzip.write(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return gzipped.toByteArray();
+  }
+
+  /**
+   * The user list in one format at one version. The arrays are shared by all
+   * readers and must not be modified.
+   */
+  public static final class Snapshot {
+
+    private final long version;
+
+    private final byte[] body;
+
+    private volatile byte[] gzipped;
+
+    private Snapshot(long version, byte[] body) {
+      this.version = version;
+      this.body = body;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Pooled Sequence Generator
+ * Sequence based id generator that hands out ids from an in-memory pool, so
+ * only one sequence call is needed per {@code allocation size} inserts. The
+ * allocation size is read from the Hibernate setting
+ * {@value #ALLOCATION_SIZE_SETTING} (set it through
+ * spring.jpa.properties.users.id.allocation-size) and must match the
+ * INCREMENT BY of the database sequence.
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+  public static final String ALLOCATION_SIZE_SETTING = "users.id.allocation-size";
+
+  @Override
+  public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+    Object allocationSize = serviceRegistry.getService(ConfigurationService.class)
+        .getSettings().get(ALLOCATION_SIZE_SETTING);
+    if (allocationSize != null) {
+      params.setProperty(INCREMENT_PARAM, allocationSize.toString());
+    }
+    params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED.getExternalName());
+    super.configure(type, params, serviceRegistry);
+  }
+}
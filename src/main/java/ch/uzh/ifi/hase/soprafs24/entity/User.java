@@ -1,6 +1,10 @@
 package ch.uzh.ifi.hase.soprafs24.entity;
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import java.io.Serializable;
@@ -15,27 +19,48 @@ import java.util.Date;
  * - nullable = false -> this cannot be left empty
  * - unique = true -> this value must be unqiue across the database -> composes
  * the primary key
+ * The id is drawn from a pooled sequence (see PooledSequenceGenerator), which
+ * needs one sequence call per batch of ids and keeps JDBC insert batching
+ * possible.
+ * Updates only write the columns that changed (@DynamicUpdate) and are guarded
+ * by the version column (@Version) against lost updates.
+ * The table is created by the Flyway migrations in db/migration, Hibernate
+ * only validates the mapping against it: a new column needs a new migration.
+ * Username and token are unique by constraint, the database rejects a
+ * duplicate even if two requests insert it at the same time.
  */
 @Entity
-@Table(name = "USER")
+@DynamicUpdate
+@Table(name = "users",
+    uniqueConstraints = {
+        @UniqueConstraint(name = User.USERNAME_CONSTRAINT, columnNames = "username"),
+        @UniqueConstraint(name = User.TOKEN_CONSTRAINT, columnNames = "token") },
+    indexes = @Index(name = "ix_users_name", columnList = "name"))
 public class User implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  public static final String USERNAME_CONSTRAINT = "uk_users_username";
+
+  public static final String TOKEN_CONSTRAINT = "uk_users_token";
+
   @Id
-  @GeneratedValue
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_id_generator")
+  @GenericGenerator(name = "user_id_generator",
+      strategy = "ch.uzh.ifi.hase.soprafs24.entity.PooledSequenceGenerator",
+      parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "user_sequence"))
   private Long id;
 
   @Column(nullable = false)
   private String name;
 
-  @Column(nullable = false, unique = true)
+  @Column(nullable = false)
   private String username;
 
   @Column(nullable = false)
   private String password;
 
-  @Column(nullable = false, unique = true)
+  @Column(nullable = false)
   private String token;
 
   @Column(nullable = false)
@@ -48,6 +73,9 @@ public class User implements Serializable {
   @Column(nullable = false)
   private UserStatus status;
 
+  @Version
+  private Long version;
+
   public Long getId() {
     return id;
   }
@@ -111,4 +139,12 @@ public class User implements Serializable {
   public void setStatus(UserStatus status) {
     this.status = status;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -0,0 +1,26 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Domain Exception
+ * Signals an expected outcome that a request is answered with a 4xx status,
+ * e.g. an unknown user or a wrong password. Such outcomes are frequent under
+ * username probing or password guessing, so the exception is cheap: it
+ * records no stack trace and no suppressed exceptions, and its message is a
+ * constant or only formatted when it is read. The GlobalExceptionAdvice
+ * answers it with {@link #getStatus()} and the message, without logging it.
+ */
+public abstract class DomainException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  protected DomainException(String message) {
+    super(message, null, false, false);
+  }
+
+  /**
+   * The status the request is answered with.
+   */
+  public abstract HttpStatus getStatus();
+}
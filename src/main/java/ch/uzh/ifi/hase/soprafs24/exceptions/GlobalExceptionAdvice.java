@@ -1,7 +1,11 @@
 package ch.uzh.ifi.hase.soprafs24.exceptions;
 
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.logging.ExceptionLogSampler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -15,12 +19,21 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 @ControllerAdvice(annotations = RestController.class)
 public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
 
   private final Logger log = LoggerFactory.getLogger(GlobalExceptionAdvice.class);
 
+  // a burst of identical failures is logged with a few stack traces, not one per request
+  private final ExceptionLogSampler exceptionLogSampler;
+
+  public GlobalExceptionAdvice(ExceptionLogSampler exceptionLogSampler) {
+    this.exceptionLogSampler = exceptionLogSampler;
+  }
+
   @ExceptionHandler(value = { IllegalArgumentException.class, IllegalStateException.class })
   protected ResponseEntity<Object> handleConflict(RuntimeException ex, WebRequest request) {
     String bodyOfResponse = "This should be application specific";
@@ -29,15 +42,58 @@ public class GlobalExceptionAdvice extends ResponseEntityExceptionHandler {
 
   @ExceptionHandler(TransactionSystemException.class)
   public ResponseStatusException handleTransactionSystemException(Exception ex, HttpServletRequest request) {
-    log.error("Request: {} raised {}", request.getRequestURL(), ex);
+    exceptionLogSampler.error(log, "Request: " + request.getRequestURI() + " raised " + ex, ex);
     return new ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage(), ex);
   }
 
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  protected ResponseEntity<Object> handleOptimisticLockingFailure(RuntimeException ex, WebRequest request) {
+    String bodyOfResponse = "The resource was modified concurrently, please reload and try again";
+    return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
+  }
+
+  /**
+   * Uniqueness is checked by the database: a duplicate insert or rename fails
+   * with a unique constraint violation, which is a conflict with the stored
+   * users. Other integrity violations are server errors.
+   */
+  @ExceptionHandler(DataIntegrityViolationException.class)
+  protected ResponseEntity<Object> handleDataIntegrityViolation(DataIntegrityViolationException ex,
+                                                                WebRequest request) {
+    if (!UniqueConstraintViolations.isUniqueViolation(ex)) {
+      exceptionLogSampler.error(log, "Request: " + request.getDescription(false) + " raised " + ex, ex);
+      return handleExceptionInternal(ex, "The data could not be stored", new HttpHeaders(),
+          HttpStatus.INTERNAL_SERVER_ERROR, request);
+    }
+    String bodyOfResponse = UniqueConstraintViolations.violates(ex, User.USERNAME_CONSTRAINT)
+        ? "The username is already taken"
+        : "The user conflicts with an existing user";
+    return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
+  }
+
+  /**
+   * Expected outcomes of the service are neither logged nor wrapped: the
+   * response is sent like the one of a ResponseStatusException, so clients get
+   * the same error body as before.
+   */
+  @ExceptionHandler(DomainException.class)
+  public void handleDomainException(DomainException ex, HttpServletResponse response) throws IOException {
+    response.sendError(ex.getStatus().value(), ex.getMessage());
+  }
+
+  // the closest match wins, this one is chosen over the DomainException handler
+  @ExceptionHandler(TooManyRequestsException.class)
+  protected ResponseEntity<Object> handleTooManyRequests(TooManyRequestsException ex, WebRequest request) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+    return handleExceptionInternal(ex, ex.getMessage(), headers, HttpStatus.TOO_MANY_REQUESTS, request);
+  }
+
   // Keep this one disable for all testing purposes -> it shows more detail with
   // this one disabled
   @ExceptionHandler(HttpServerErrorException.InternalServerError.class)
   public ResponseStatusException handleException(Exception ex) {
-    log.error("Default Exception Handler -> caught:", ex);
+    exceptionLogSampler.error(log, "Default Exception Handler -> caught:", ex);
     return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage(), ex);
   }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when the caller could not be authenticated: a wrong password at
+ * login, or a missing, unknown or expired token. Answered with 401
+ * Unauthorized.
+ */
+public class InvalidCredentialsException extends DomainException {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String WRONG_PASSWORD = "Wrong password";
+
+  private static final String TOKEN_REQUIRED = "A valid token is required";
+
+  private InvalidCredentialsException(String message) {
+    super(message);
+  }
+
+  public static InvalidCredentialsException wrongPassword() {
+    return new InvalidCredentialsException(WRONG_PASSWORD);
+  }
+
+  public static InvalidCredentialsException tokenRequired() {
+    return new InvalidCredentialsException(TOKEN_REQUIRED);
+  }
+
+  @Override
+  public HttpStatus getStatus() {
+    return HttpStatus.UNAUTHORIZED;
+  }
+}
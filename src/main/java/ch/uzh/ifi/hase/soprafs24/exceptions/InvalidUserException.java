@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a new user lacks a username or a password. Answered with 400
+ * Bad Request.
+ */
+public class InvalidUserException extends DomainException {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String MESSAGE = "Username and password cannot be empty";
+
+  public InvalidUserException() {
+    super(MESSAGE);
+  }
+
+  @Override
+  public HttpStatus getStatus() {
+    return HttpStatus.BAD_REQUEST;
+  }
+}
@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when an authenticated caller tries to modify the profile of another
+ * user. Answered with 403 Forbidden.
+ */
+public class NotProfileOwnerException extends DomainException {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String MESSAGE = "You are not allowed to modify this profile";
+
+  public NotProfileOwnerException() {
+    super(MESSAGE);
+  }
+
+  @Override
+  public HttpStatus getStatus() {
+    return HttpStatus.FORBIDDEN;
+  }
+}
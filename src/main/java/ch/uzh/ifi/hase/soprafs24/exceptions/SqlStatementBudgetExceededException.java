@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+/**
+ * Thrown when an endpoint issued more SQL statements than its
+ * {@code @SqlStatementBudget} allows and budgets are enforced
+ * (users.sql.statement-budget.enforce=true, meant for tests). It is
+ * deliberately not mapped by the GlobalExceptionAdvice, so the request fails.
+ */
+public class SqlStatementBudgetExceededException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public SqlStatementBudgetExceededException(String message) {
+    super(message);
+  }
+}
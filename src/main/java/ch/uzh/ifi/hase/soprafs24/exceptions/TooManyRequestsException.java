@@ -0,0 +1,31 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when the server sheds load instead of queueing more work. It is
+ * answered with 429 Too Many Requests and a Retry-After header by the
+ * GlobalExceptionAdvice. Shedding load is expected under exactly the bursts
+ * it protects against, so like every {@link DomainException} it is created
+ * without a stack trace.
+ */
+public class TooManyRequestsException extends DomainException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long retryAfterSeconds;
+
+  public TooManyRequestsException(String message, long retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  @Override
+  public HttpStatus getStatus() {
+    return HttpStatus.TOO_MANY_REQUESTS;
+  }
+}
@@ -0,0 +1,46 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * Unique Constraint Violations
+ * Recognizes the exceptions caused by a unique constraint of the database.
+ * H2 and PostgreSQL both report them with the SQL state 23505 and name the
+ * violated constraint in the message.
+ */
+public final class UniqueConstraintViolations {
+
+  private static final String UNIQUE_VIOLATION_SQL_STATE = "23505";
+
+  private UniqueConstraintViolations() {
+  }
+
+  /**
+   * Whether the exception, or one of its causes, reports a violated unique
+   * constraint.
+   */
+  public static boolean isUniqueViolation(Throwable exception) {
+    return uniqueViolationOf(exception) != null;
+  }
+
+  /**
+   * Whether the exception, or one of its causes, reports a violation of the
+   * unique constraint with the given name.
+   */
+  public static boolean violates(Throwable exception, String constraintName) {
+    SQLException violation = uniqueViolationOf(exception);
+    return violation != null && violation.getMessage() != null
+        && violation.getMessage().toLowerCase(Locale.ROOT).contains(constraintName.toLowerCase(Locale.ROOT));
+  }
+
+  private static SQLException uniqueViolationOf(Throwable exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException
+          && UNIQUE_VIOLATION_SQL_STATE.equals(((SQLException) cause).getSQLState())) {
+        return (SQLException) cause;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,29 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when an update was made against a version of the user that is no
+ * longer current. Answered with 412 Precondition Failed.
+ */
+public class UserModifiedException extends DomainException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Long userId;
+
+  public UserModifiedException(Long userId) {
+    super(null);
+    this.userId = userId;
+  }
+
+  @Override
+  public HttpStatus getStatus() {
+    return HttpStatus.PRECONDITION_FAILED;
+  }
+
+  @Override
+  public String getMessage() {
+    return "User with ID " + userId + " was modified in the meantime";
+  }
+}
@@ -0,0 +1,29 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when the user a request refers to, by id or by username, does not
+ * exist. Answered with 404 Not Found.
+ */
+public class UserNotFoundException extends DomainException {
+
+  private static final long serialVersionUID = 1L;
+
+  private UserNotFoundException(String field, Object value) {
+    super("User with " + field + " " + value + " was not found");
+  }
+
+  public static UserNotFoundException byId(Long userId) {
+    return new UserNotFoundException("ID", userId);
+  }
+
+  public static UserNotFoundException byUsername(String username) {
+    return new UserNotFoundException("username", username);
+  }
+
+  @Override
+  public HttpStatus getStatus() {
+    return HttpStatus.NOT_FOUND;
+  }
+}
@@ -0,0 +1,113 @@
+package ch.uzh.ifi.hase.soprafs24.logging;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Exception Log Sampler
+ * Logs the same exception over and over at most {@code maxPerInterval} times
+ * per interval with its stack trace. Further occurrences are only counted,
+ * and the count is logged once with the next occurrence after the interval.
+ * Two exceptions are the same if they have the same class and were thrown at
+ * the same place. A burst of identical failures thus costs a few log events
+ * instead of one stack trace per request.
+ */
+@Component
+public class ExceptionLogSampler {
+
+  // sampling state is dropped when this many distinct exceptions were seen
+  private static final int MAX_KEYS = 1_024;
+
+  private final int maxPerInterval;
+
+  private final long intervalNanos;
+
+  private final LongSupplier clock;
+
+  private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+  private final LongAdder suppressedCount = new LongAdder();
+
+  @Autowired
+  public ExceptionLogSampler(@Value("${users.logging.exception-sample.max-per-interval:5}") int maxPerInterval,
+                             @Value("${users.logging.exception-sample.interval:PT1M}") Duration interval) {
+    this(maxPerInterval, interval, System::nanoTime);
+  }
+
+  ExceptionLogSampler(int maxPerInterval, Duration interval, LongSupplier clock) {
+    this.maxPerInterval = maxPerInterval;
+    this.intervalNanos = interval.toNanos();
+    this.clock = clock;
+  }
+
+  /**
+   * Logs the message and the exception as an error, unless the same exception
+   * was already logged {@code maxPerInterval} times in the current interval.
+   *
+   * @return true if the event was logged
+   */
+  public boolean error(Logger log, String message, Throwable exception) {
+    if (windows.size() >= MAX_KEYS) {
+      windows.clear();
+    }
+    Window window = windows.computeIfAbsent(keyOf(exception), key -> new Window(clock.getAsLong()));
+    long suppressedBefore = window.rollOver(clock.getAsLong(), intervalNanos);
+    if (window.count.incrementAndGet() > maxPerInterval) {
+      window.suppressed.incrementAndGet();
+      suppressedCount.increment();
+      return false;
+    }
+    if (suppressedBefore > 0) {
+      log.error("{} ({} identical errors were not logged in the previous interval)", message, suppressedBefore,
+          exception);
+    } else {
+      log.error(message, exception);
+    }
+    return true;
+  }
+
+  public long suppressedCount() {
+    return suppressedCount.sum();
+  }
+
+  private static String keyOf(Throwable exception) {
+    StackTraceElement[] stackTrace = exception.getStackTrace();
+    String origin = stackTrace.length == 0 ? "" : stackTrace[0].toString();
+    return exception.getClass().getName() + '@' + origin;
+  }
+
+  private static final class Window {
+
+    private final AtomicLong start;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    private Window(long start) {
+      this.start = new AtomicLong(start);
+    }
+
+    /**
+     * Starts a new interval if the current one is over.
+     *
+     * @return the number of occurrences suppressed in the interval that ended,
+     *         0 if it has not ended
+     */
+    private long rollOver(long now, long intervalNanos) {
+      long currentStart = start.get();
+      if (now - currentStart < intervalNanos || !start.compareAndSet(currentStart, now)) {
+        return 0;
+      }
+      count.set(0);
+      return suppressed.getAndSet(0);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package ch.uzh.ifi.hase.soprafs24.logging;
+
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Gives every request an id that is put into the MDC, so that every log event
+ * of the request carries it, and returned in the X-Request-Id header. An id
+ * sent by the client or a proxy is kept if it looks like one.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestIdFilter extends OncePerRequestFilter {
+
+  public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+  public static final String REQUEST_ID_MDC_KEY = "requestId";
+
+  private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String requestId = request.getHeader(REQUEST_ID_HEADER);
+    if (requestId == null || !VALID_REQUEST_ID.matcher(requestId).matches()) {
+      requestId = UUID.randomUUID().toString();
+    }
+    response.setHeader(REQUEST_ID_HEADER, requestId);
+    MDC.put(REQUEST_ID_MDC_KEY, requestId);
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      MDC.remove(REQUEST_ID_MDC_KEY);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how many SQL statements a controller method may issue per request.
+ * Exceeding the budget is logged as a warning, or fails the request when
+ * users.sql.statement-budget.enforce=true.
+ *
+ * @see SqlStatementCountingFilter
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SqlStatementBudget {
+
+  /**
+   * Maximum number of statements, a JDBC batch counts as one.
+   */
+  int value();
+}
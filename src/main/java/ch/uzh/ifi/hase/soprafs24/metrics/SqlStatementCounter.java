@@ -0,0 +1,30 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+/**
+ * SQL Statement Counter
+ * Counts the statements sent to the database by the current thread. It is fed
+ * by the proxy around the DataSource and reset at the start of every request,
+ * so during a request it holds the statements of that request. Work handed to
+ * other threads is not included. GET /users is answered from the cached bytes
+ * of the UserListCache without a statement; the request that finds the cache
+ * outdated is charged with reading the changed users again.
+ */
+public final class SqlStatementCounter {
+
+  private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+  private SqlStatementCounter() {
+  }
+
+  static void increment() {
+    COUNT.get()[0]++;
+  }
+
+  public static void reset() {
+    COUNT.get()[0] = 0;
+  }
+
+  public static long count() {
+    return COUNT.get()[0];
+  }
+}
@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.SqlStatementBudgetExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Starts counting SQL statements from zero for every request. When the
+ * request is done, whatever the handler returned and whether it failed, the
+ * count is checked against the {@link SqlStatementBudget} of the handler
+ * method and, if the response is not sent yet, reported in the
+ * {@link SqlStatementHeaderAdvice#STATEMENT_COUNT_HEADER} header.
+ */
+@Component
+public class SqlStatementCountingFilter extends OncePerRequestFilter {
+
+  private final Logger log = LoggerFactory.getLogger(SqlStatementCountingFilter.class);
+
+  private final boolean headerEnabled;
+
+  private final boolean enforce;
+
+  public SqlStatementCountingFilter(@Value("${users.sql.statement-header.enabled:false}") boolean headerEnabled,
+                                    @Value("${users.sql.statement-budget.enforce:false}") boolean enforce) {
+    this.headerEnabled = headerEnabled;
+    this.enforce = enforce;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    SqlStatementCounter.reset();
+    filterChain.doFilter(request, response);
+
+    long statements = SqlStatementCounter.count();
+    if (headerEnabled && !response.isCommitted()) {
+      response.setHeader(SqlStatementHeaderAdvice.STATEMENT_COUNT_HEADER, Long.toString(statements));
+    }
+
+    // the handler the request was dispatched to, also when it failed
+    Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+    SqlStatementBudget budget = handler instanceof HandlerMethod
+        ? ((HandlerMethod) handler).getMethodAnnotation(SqlStatementBudget.class) : null;
+    if (budget != null && statements > budget.value()) {
+      String message = String.format("%s %s issued %d SQL statements, its budget is %d", request.getMethod(),
+          request.getRequestURI(), statements, budget.value());
+      if (enforce) {
+        throw new SqlStatementBudgetExceededException(message);
+      }
+      log.warn(message);
+    }
+  }
+}
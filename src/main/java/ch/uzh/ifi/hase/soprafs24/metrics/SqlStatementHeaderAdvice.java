@@ -0,0 +1,44 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * SQL Statement Header Advice
+ * Runs right before a response body is written, after the transaction of the
+ * request has committed, and adds the number of SQL statements of the request
+ * as a response header (if enabled, meant for non-production environments).
+ * Once the body is written the headers are sent, so the header of a response
+ * with a body is set here; the SqlStatementCountingFilter sets it for
+ * responses without one and checks the budget of every request.
+ */
+@ControllerAdvice
+public class SqlStatementHeaderAdvice implements ResponseBodyAdvice<Object> {
+
+  public static final String STATEMENT_COUNT_HEADER = "X-SQL-Statements";
+
+  private final boolean headerEnabled;
+
+  public SqlStatementHeaderAdvice(@Value("${users.sql.statement-header.enabled:false}") boolean headerEnabled) {
+    this.headerEnabled = headerEnabled;
+  }
+
+  @Override
+  public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+    return headerEnabled;
+  }
+
+  @Override
+  public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                ServerHttpRequest request, ServerHttpResponse response) {
+    response.getHeaders().set(STATEMENT_COUNT_HEADER, Long.toString(SqlStatementCounter.count()));
+    return body;
+  }
+}
@@ -0,0 +1,48 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Statement Counting DataSource Post Processor
+ * Wraps every DataSource in a datasource-proxy that reports each executed
+ * statement to the {@link SqlStatementCounter}. The proxy delegates unwrap(),
+ * so the pool metrics still see the HikariDataSource behind it.
+ */
+@Component
+@ConditionalOnProperty(name = "users.sql.statement-counting.enabled", havingValue = "true", matchIfMissing = true)
+public class StatementCountingDataSourcePostProcessor implements BeanPostProcessor {
+
+  @Override
+  public Object postProcessAfterInitialization(Object bean, String beanName) {
+    if (bean instanceof DataSource && !(bean instanceof ProxyDataSource)) {
+      return ProxyDataSourceBuilder.create((DataSource) bean)
+          .name(beanName)
+          .listener(new CountingListener())
+          .build();
+    }
+    return bean;
+  }
+
+  private static final class CountingListener implements QueryExecutionListener {
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+      // one call per round-trip, a batch of many rows is a single execution
+      SqlStatementCounter.increment();
+    }
+  }
+}
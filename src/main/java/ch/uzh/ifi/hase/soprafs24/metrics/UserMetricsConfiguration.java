@@ -0,0 +1,152 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import ch.uzh.ifi.hase.soprafs24.controller.UserListCache;
+import ch.uzh.ifi.hase.soprafs24.logging.ExceptionLogSampler;
+import ch.uzh.ifi.hase.soprafs24.security.AuthenticationInterceptor;
+import ch.uzh.ifi.hase.soprafs24.security.LoginRateLimiter;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.SignedTokens;
+import ch.uzh.ifi.hase.soprafs24.security.TokenRevocationList;
+import ch.uzh.ifi.hase.soprafs24.security.UserTokenCache;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceRegistry;
+import ch.uzh.ifi.hase.soprafs24.service.UserEventBroadcaster;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * User Metrics Configuration
+ * Exposes the state of the in-memory user components as meters: the token
+ * cache, the authentication, the signed tokens, the password hashing pool,
+ * the login rate limiter, the presence registry, the event stream, the cached
+ * user list and the exception log sampling. JVM, HTTP, HikariCP and Hibernate
+ * meters are bound by Spring Boot.
+ */
+@Configuration
+public class UserMetricsConfiguration {
+
+  @Bean
+  public MeterBinder tokenCacheMetrics(UserTokenCache tokenCache) {
+    return registry -> {
+      FunctionCounter.builder("users.token-cache.gets", tokenCache, UserTokenCache::hitCount)
+          .description("Token lookups answered by the cache")
+          .tag("result", "hit")
+          .register(registry);
+      FunctionCounter.builder("users.token-cache.gets", tokenCache, UserTokenCache::missCount)
+          .description("Token lookups that went to the database")
+          .tag("result", "miss")
+          .register(registry);
+      FunctionCounter.builder("users.token-cache.evictions", tokenCache, UserTokenCache::evictionCount)
+          .register(registry);
+      Gauge.builder("users.token-cache.size", tokenCache, UserTokenCache::estimatedSize)
+          .register(registry);
+      Gauge.builder("users.token-cache.unknown.size", tokenCache, UserTokenCache::unknownSize)
+          .description("Tokens remembered as unknown")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder authenticationMetrics(AuthenticationInterceptor authenticationInterceptor) {
+    return registry -> {
+      FunctionCounter.builder("users.authentication.rejected", authenticationInterceptor,
+              AuthenticationInterceptor::unauthorizedCount)
+          .description("Requests refused with 401 before reaching the controller")
+          .tag("status", "401")
+          .register(registry);
+      FunctionCounter.builder("users.authentication.rejected", authenticationInterceptor,
+              AuthenticationInterceptor::forbiddenCount)
+          .description("Requests refused with 403 before reaching the controller")
+          .tag("status", "403")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder signedTokenMetrics(SignedTokens signedTokens, TokenRevocationList revocationList) {
+    return registry -> {
+      FunctionCounter.builder("users.signed-tokens.verifications", signedTokens, SignedTokens::acceptedCount)
+          .description("Signed tokens accepted without a database read")
+          .tag("result", "accepted")
+          .register(registry);
+      FunctionCounter.builder("users.signed-tokens.verifications", signedTokens, SignedTokens::rejectedCount)
+          .description("Signed tokens refused as forged, expired or revoked")
+          .tag("result", "rejected")
+          .register(registry);
+      Gauge.builder("users.signed-tokens.revoked", revocationList, TokenRevocationList::size)
+          .description("Revoked signed tokens that have not expired yet")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder passwordHasherMetrics(PasswordHasher passwordHasher) {
+    return registry -> {
+      Gauge.builder("users.password-hasher.queued", passwordHasher, PasswordHasher::queueDepth)
+          .description("Hashing jobs waiting for a thread")
+          .register(registry);
+      Gauge.builder("users.password-hasher.active", passwordHasher, PasswordHasher::activeCount)
+          .register(registry);
+      FunctionCounter.builder("users.password-hasher.rejected", passwordHasher, PasswordHasher::rejectedCount)
+          .description("Hashing jobs rejected with 429 because the queue was full or timed out")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder loginRateLimiterMetrics(LoginRateLimiter loginRateLimiter) {
+    return registry -> {
+      FunctionCounter.builder("users.login.attempts", loginRateLimiter, LoginRateLimiter::allowedCount)
+          .description("Login attempts let through by the rate limiter")
+          .tag("result", "allowed")
+          .register(registry);
+      FunctionCounter.builder("users.login.attempts", loginRateLimiter, LoginRateLimiter::ipRejectedCount)
+          .description("Login attempts refused with 429 because the client exceeded its limit")
+          .tag("result", "rejected-ip")
+          .register(registry);
+      FunctionCounter.builder("users.login.attempts", loginRateLimiter, LoginRateLimiter::usernameRejectedCount)
+          .description("Login attempts answered with 429 because the client failed too often for the username")
+          .tag("result", "rejected-username")
+          .register(registry);
+      Gauge.builder("users.login.rate-limit.keys", loginRateLimiter, LoginRateLimiter::trackedKeys)
+          .description("Client IPs and usernames with a token bucket")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder exceptionLogMetrics(ExceptionLogSampler exceptionLogSampler) {
+    return registry -> FunctionCounter.builder("users.logging.exceptions.suppressed", exceptionLogSampler,
+            ExceptionLogSampler::suppressedCount)
+        .description("Exception log events left out because the same exception was logged often in the interval")
+        .register(registry);
+  }
+
+  @Bean
+  public MeterBinder userListCacheMetrics(UserListCache userListCache) {
+    return registry -> {
+      FunctionCounter.builder("users.list-cache.reads", userListCache, UserListCache::hitCount)
+          .description("GET /users answered with the serialized list of a previous request")
+          .tag("result", "hit")
+          .register(registry);
+      FunctionCounter.builder("users.list-cache.reads", userListCache, UserListCache::buildCount)
+          .description("GET /users that serialized the list again after a change")
+          .tag("result", "build")
+          .register(registry);
+    };
+  }
+
+  @Bean
+  public MeterBinder presenceMetrics(PresenceRegistry presenceRegistry, UserEventBroadcaster userEventBroadcaster) {
+    return registry -> {
+      Gauge.builder("users.presence.tracked", presenceRegistry, PresenceRegistry::size)
+          .description("Users with a heartbeat in the presence registry")
+          .register(registry);
+      Gauge.builder("users.events.subscribers", userEventBroadcaster, UserEventBroadcaster::subscriberCount)
+          .description("Open GET /users/events streams")
+          .register(registry);
+    };
+  }
+}
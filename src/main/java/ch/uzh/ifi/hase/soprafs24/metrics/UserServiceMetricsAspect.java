@@ -0,0 +1,68 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.DomainException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UniqueConstraintViolations;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * User Service Metrics Aspect
+ * Times every public UserService method as "users.service", tagged with the
+ * method name and the outcome: "success" or the HTTP status the failure is
+ * answered with (404, 401, 403, 409, ...). Unexpected exceptions are tagged
+ * "error" so that the number of tag values stays bounded.
+ * The HTTP layer is timed by Spring Boot itself ("http.server.requests",
+ * tagged with uri and status).
+ */
+@Aspect
+@Component
+public class UserServiceMetricsAspect {
+
+  static final String TIMER_NAME = "users.service";
+
+  static final String SUCCESS = "success";
+
+  private final MeterRegistry meterRegistry;
+
+  public UserServiceMetricsAspect(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Around("execution(public * ch.uzh.ifi.hase.soprafs24.service.UserService.*(..))")
+  public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = SUCCESS;
+    try {
+      return joinPoint.proceed();
+    } catch (Throwable e) {
+      outcome = outcomeOf(e);
+      throw e;
+    } finally {
+      sample.stop(Timer.builder(TIMER_NAME)
+          .description("Duration of UserService operations")
+          .tag("method", joinPoint.getSignature().getName())
+          .tag("outcome", outcome)
+          .register(meterRegistry));
+    }
+  }
+
+  static String outcomeOf(Throwable e) {
+    if (e instanceof DomainException) {
+      return String.valueOf(((DomainException) e).getStatus().value());
+    }
+    if (e instanceof ResponseStatusException) {
+      return String.valueOf(((ResponseStatusException) e).getStatus().value());
+    }
+    if (e instanceof OptimisticLockingFailureException || UniqueConstraintViolations.isUniqueViolation(e)) {
+      return String.valueOf(HttpStatus.CONFLICT.value());
+    }
+    return "error";
+  }
+}
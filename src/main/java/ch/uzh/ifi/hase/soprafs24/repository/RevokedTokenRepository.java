@@ -0,0 +1,53 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Revoked Token Repository
+ * Persists the ids of revoked signed tokens together with the time the token
+ * would have expired anyway (epoch seconds). Rows of expired tokens are of no
+ * use anymore and are deleted, so the table stays as small as the number of
+ * logouts within one token lifetime.
+ */
+@Repository("revokedTokenRepository")
+public class RevokedTokenRepository {
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public RevokedTokenRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Returns token id -> expiry of every token that is revoked and not yet
+   * expired.
+   */
+  public Map<Long, Long> findUnexpired(long nowEpochSeconds) {
+    Map<Long, Long> revoked = new HashMap<>();
+    jdbcTemplate.query("SELECT id, expires_at FROM revoked_tokens WHERE expires_at > ?",
+        (RowCallbackHandler) resultSet -> revoked.put(resultSet.getLong("id"), resultSet.getLong("expires_at")),
+        nowEpochSeconds);
+    return revoked;
+  }
+
+  /**
+   * Stores a revoked token. Revoking the same token twice is a no-op.
+   */
+  public void save(long tokenId, long expiresAtEpochSeconds) {
+    try {
+      jdbcTemplate.update("INSERT INTO revoked_tokens (id, expires_at) VALUES (?, ?)", tokenId, expiresAtEpochSeconds);
+    } catch (DuplicateKeyException e) {
+      // revoked concurrently, e.g. by another instance
+    }
+  }
+
+  public int deleteExpired(long nowEpochSeconds) {
+    return jdbcTemplate.update("DELETE FROM revoked_tokens WHERE expires_at <= ?", nowEpochSeconds);
+  }
+}
@@ -1,9 +1,18 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 @Repository("userRepository")
 public interface UserRepository extends JpaRepository<User, Long> {
   User findByName(String name);
@@ -11,4 +20,22 @@ public interface UserRepository extends JpaRepository<User, Long> {
   User findByUsername(String username);
 
   User findByToken(String token);  
+
+  // keyset pagination: seeks past the last id of the previous page instead of
+  // skipping rows with an offset; a projection, only the listed columns are selected
+  @Query("select new ch.uzh.ifi.hase.soprafs24.repository.UserSummary(u.id, u.name, u.username, u.token, "
+      + "u.creationDate, u.birthday, u.status) from User u where u.id > :after order by u.id")
+  List<UserSummary> findSummariesAfter(@Param("after") Long after, Pageable pageable);
+
+  @Query("select u.username from User u where u.username in :usernames")
+  Set<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+  // bulk status updates of the presence registry, they bypass the version check on purpose
+  @Modifying
+  @Query("update User u set u.status = :status where u.id in :ids")
+  int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") UserStatus status);
+
+  @Modifying
+  @Query("update User u set u.status = :newStatus where u.status = :oldStatus")
+  int updateStatusOfAll(@Param("oldStatus") UserStatus oldStatus, @Param("newStatus") UserStatus newStatus);
 }
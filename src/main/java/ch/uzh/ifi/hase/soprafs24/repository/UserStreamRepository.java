@@ -0,0 +1,64 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * User Stream Repository
+ * Reads users straight from a forward-only JDBC cursor and hands every row to
+ * the caller one by one. In contrast to the UserRepository, the rows are never
+ * attached to the persistence context and the full result is never held in
+ * memory, which keeps the heap flat no matter how many users exist.
+ */
+@Repository("userStreamRepository")
+public class UserStreamRepository {
+
+  private static final String SELECT_ALL_USERS =
+      "SELECT id, name, username, token, creation_date, birthday, status FROM users ORDER BY id";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final int fetchSize;
+
+  public UserStreamRepository(JdbcTemplate jdbcTemplate,
+                              @Value("${users.stream.fetch-size:500}") int fetchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Passes every user, ordered by id, to the given consumer. The users handed
+   * out are detached, read-only snapshots without a password.
+   *
+   * @param consumer callback invoked once per row
+   */
+  public void forEachUser(Consumer<User> consumer) {
+    jdbcTemplate.query(connection -> {
+      PreparedStatement statement = connection.prepareStatement(SELECT_ALL_USERS,
+          ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      statement.setFetchSize(fetchSize);
+      return statement;
+    }, (RowCallbackHandler) resultSet -> consumer.accept(mapRow(resultSet)));
+  }
+
+  private static User mapRow(ResultSet resultSet) throws SQLException {
+    User user = new User();
+    user.setId(resultSet.getLong("id"));
+    user.setName(resultSet.getString("name"));
+    user.setUsername(resultSet.getString("username"));
+    user.setToken(resultSet.getString("token"));
+    user.setCreationDate(resultSet.getTimestamp("creation_date"));
+    user.setBirthday(resultSet.getTimestamp("birthday"));
+    user.setStatus(UserStatus.values()[resultSet.getInt("status")]);
+    return user;
+  }
+}
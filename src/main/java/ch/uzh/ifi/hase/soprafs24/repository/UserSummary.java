@@ -0,0 +1,68 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+
+import java.util.Date;
+
+/**
+ * User Summary
+ * Read-only projection of the columns shown in user lists. It is created by a
+ * JPQL constructor expression, so it is never managed: no password is loaded,
+ * and nothing is put into the persistence context or snapshotted for dirty
+ * checking.
+ */
+public class UserSummary {
+
+  private final Long id;
+
+  private final String name;
+
+  private final String username;
+
+  private final String token;
+
+  private final Date creationDate;
+
+  private final Date birthday;
+
+  private final UserStatus status;
+
+  public UserSummary(Long id, String name, String username, String token, Date creationDate, Date birthday,
+                     UserStatus status) {
+    this.id = id;
+    this.name = name;
+    this.username = username;
+    this.token = token;
+    this.creationDate = creationDate;
+    this.birthday = birthday;
+    this.status = status;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getToken() {
+    return token;
+  }
+
+  public Date getCreationDate() {
+    return creationDate;
+  }
+
+  public Date getBirthday() {
+    return birthday;
+  }
+
+  public UserStatus getStatus() {
+    return status;
+  }
+}
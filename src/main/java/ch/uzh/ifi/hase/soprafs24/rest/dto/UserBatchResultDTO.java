@@ -0,0 +1,43 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+import ch.uzh.ifi.hase.soprafs24.constant.BatchItemStatus;
+
+public class UserBatchResultDTO {
+
+  private int index;
+  private BatchItemStatus status;
+  private UserGetDTO user;
+  private String message;
+
+  public int getIndex() {
+    return index;
+  }
+
+  public void setIndex(int index) {
+    this.index = index;
+  }
+
+  public BatchItemStatus getStatus() {
+    return status;
+  }
+
+  public void setStatus(BatchItemStatus status) {
+    this.status = status;
+  }
+
+  public UserGetDTO getUser() {
+    return user;
+  }
+
+  public void setUser(UserGetDTO user) {
+    this.user = user;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+}
@@ -1,9 +1,14 @@
 package ch.uzh.ifi.hase.soprafs24.rest.mapper;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserBatchResultDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserSearchResultDTO;
+import ch.uzh.ifi.hase.soprafs24.service.UserBatchResult;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchHit;
 import org.mapstruct.*;
 import org.mapstruct.factory.Mappers;
 
@@ -42,6 +47,15 @@ public interface DTOMapper {
   @Mapping(source = "status", target = "status")
   UserGetDTO convertEntityToUserGetDTO(User user);
 
+  @Mapping(source = "id", target = "id")
+  @Mapping(source = "name", target = "name")
+  @Mapping(source = "username", target = "username")
+  @Mapping(source = "token", target = "token")
+  @Mapping(source = "creationDate", target = "creationDate")
+  @Mapping(source = "birthday", target = "birthday")
+  @Mapping(source = "status", target = "status")
+  UserGetDTO convertSummaryToUserGetDTO(UserSummary userSummary);
+
   @Mapping(target = "id", ignore = true)
   @Mapping(target = "creationDate", ignore = true)
   @Mapping(target = "token", ignore = true)
@@ -59,4 +73,16 @@ public interface DTOMapper {
   @Mapping(target = "creationDate", ignore = true)
   @Mapping(target = "status", ignore = true)
   void updateUserFromPutDTO(UserPutDTO userPutDTO, @MappingTarget User user);
+
+  @Mapping(source = "index", target = "index")
+  @Mapping(source = "status", target = "status")
+  @Mapping(source = "user", target = "user")
+  @Mapping(source = "message", target = "message")
+  UserBatchResultDTO convertBatchResultToDTO(UserBatchResult result);
+
+  @Mapping(source = "id", target = "id")
+  @Mapping(source = "username", target = "username")
+  @Mapping(source = "name", target = "name")
+  @Mapping(target = "status", ignore = true)
+  UserSearchResultDTO convertSearchHitToDTO(UserSearchHit hit);
 }
@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a controller method that needs an authenticated caller. Requests
+ * without a valid token in the Authorization header are answered with 401
+ * before the method is invoked; the principal of a valid one is handed to the
+ * method in the request attribute {@link AuthenticationInterceptor#PRINCIPAL_ATTRIBUTE}.
+ *
+ * @see AuthenticationInterceptor
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Authenticated {
+
+  /**
+   * Name of the path variable holding the id of the user the request acts on.
+   * If set, only that user may call the method, everyone else gets 403.
+   */
+  String owner() default "";
+}
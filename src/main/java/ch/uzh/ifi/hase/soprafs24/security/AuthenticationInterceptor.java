@@ -0,0 +1,84 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.NotProfileOwnerException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Authentication Interceptor
+ * Authenticates the caller of every {@link Authenticated} controller method
+ * once, before the request body is read, the method is invoked or a
+ * transaction is opened. Requests without a valid token are refused with 401,
+ * requests acting on another user than the caller with 403. The principal is
+ * put into the request attribute {@link #PRINCIPAL_ATTRIBUTE} for the method.
+ * Methods without the annotation are left alone.
+ */
+@Component
+public class AuthenticationInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+  public static final String PRINCIPAL_ATTRIBUTE = AuthenticationInterceptor.class.getName() + ".principal";
+
+  private final TokenAuthenticator tokenAuthenticator;
+
+  private final LongAdder unauthorizedCount = new LongAdder();
+
+  private final LongAdder forbiddenCount = new LongAdder();
+
+  public AuthenticationInterceptor(TokenAuthenticator tokenAuthenticator) {
+    this.tokenAuthenticator = tokenAuthenticator;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(this);
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (!(handler instanceof HandlerMethod)) {
+      return true;
+    }
+    Authenticated authenticated = ((HandlerMethod) handler).getMethodAnnotation(Authenticated.class);
+    if (authenticated == null) {
+      return true;
+    }
+
+    UserPrincipal principal = tokenAuthenticator.authenticate(request.getHeader(HttpHeaders.AUTHORIZATION));
+    if (principal == null) {
+      unauthorizedCount.increment();
+      throw InvalidCredentialsException.tokenRequired();
+    }
+    if (!authenticated.owner().isEmpty() && !isOwner(principal, request, authenticated.owner())) {
+      forbiddenCount.increment();
+      throw new NotProfileOwnerException();
+    }
+    request.setAttribute(PRINCIPAL_ATTRIBUTE, principal);
+    return true;
+  }
+
+  public long unauthorizedCount() {
+    return unauthorizedCount.sum();
+  }
+
+  public long forbiddenCount() {
+    return forbiddenCount.sum();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static boolean isOwner(UserPrincipal principal, HttpServletRequest request, String pathVariable) {
+    Map<String, String> pathVariables =
+        (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+    return pathVariables != null && String.valueOf(principal.getId()).equals(pathVariables.get(pathVariable));
+  }
+}
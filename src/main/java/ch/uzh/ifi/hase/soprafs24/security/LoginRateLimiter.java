@@ -0,0 +1,129 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Login Rate Limiter
+ * Throttles login attempts with one token bucket per client IP and one per
+ * username and client IP. Every attempt takes a token of its client, which
+ * slows down a single client trying many accounts. Only failed attempts take
+ * a token of the username and client, which slows down a client guessing the
+ * password of one account; since the bucket is per client, failures from other
+ * clients cannot lock the owner out. Both buckets are checked before the user
+ * is looked up and the password is hashed: an empty bucket refuses the correct
+ * password as well, so a refusal tells nothing about the guess. A refused
+ * attempt is answered with 429 and a Retry-After header.
+ * The buckets live in memory and are bounded in number (see
+ * {@link TokenBuckets}), so every instance of the server limits on its own.
+ */
+@Component
+public class LoginRateLimiter {
+
+  private final boolean enabled;
+
+  private final TokenBuckets ipBuckets;
+
+  private final TokenBuckets usernameBuckets;
+
+  private final LongSupplier clock;
+
+  private final LongAdder allowedCount = new LongAdder();
+
+  private final LongAdder ipRejectedCount = new LongAdder();
+
+  private final LongAdder usernameRejectedCount = new LongAdder();
+
+  @Autowired
+  public LoginRateLimiter(@Value("${users.login.rate-limit.enabled:true}") boolean enabled,
+                          @Value("${users.login.rate-limit.ip.capacity:60}") int ipCapacity,
+                          @Value("${users.login.rate-limit.ip.period:PT1M}") Duration ipPeriod,
+                          @Value("${users.login.rate-limit.username.capacity:10}") int usernameCapacity,
+                          @Value("${users.login.rate-limit.username.period:PT1M}") Duration usernamePeriod,
+                          @Value("${users.login.rate-limit.max-keys:100000}") int maxKeys) {
+    this(enabled, ipCapacity, ipPeriod, usernameCapacity, usernamePeriod, maxKeys, System::nanoTime);
+  }
+
+  LoginRateLimiter(boolean enabled, int ipCapacity, Duration ipPeriod, int usernameCapacity,
+                   Duration usernamePeriod, int maxKeys, LongSupplier clock) {
+    this.enabled = enabled;
+    this.ipBuckets = new TokenBuckets(ipCapacity, ipPeriod, maxKeys);
+    this.usernameBuckets = new TokenBuckets(usernameCapacity, usernamePeriod, maxKeys);
+    this.clock = clock;
+  }
+
+  /**
+   * Counts a login attempt against the limit of the client and checks the
+   * failures of the client for the username, before the credentials are.
+   *
+   * @param clientIp address of the client
+   * @param username the username the client logs in as
+   * @throws TooManyRequestsException if a limit is exhausted
+   */
+  public void acquire(String clientIp, String username) {
+    if (!enabled) {
+      return;
+    }
+    long now = clock.getAsLong();
+    long ipWait = ipBuckets.tryAcquire(String.valueOf(clientIp), now);
+    if (ipWait > 0) {
+      ipRejectedCount.increment();
+      throw new TooManyRequestsException("Too many login attempts from this client", retryAfterSeconds(ipWait));
+    }
+    long usernameWait = usernameBuckets.waitTime(usernameKey(clientIp, username), now);
+    if (usernameWait > 0) {
+      usernameRejectedCount.increment();
+      throw new TooManyRequestsException("Too many failed login attempts for this user",
+          retryAfterSeconds(usernameWait));
+    }
+    allowedCount.increment();
+  }
+
+  /**
+   * Counts a failed login attempt against the limit of the client for the
+   * username. The next attempt is refused once the limit is exhausted.
+   *
+   * @param clientIp address of the client
+   * @param username the username the client failed to log in as
+   */
+  public void recordFailure(String clientIp, String username) {
+    if (!enabled) {
+      return;
+    }
+    usernameBuckets.tryAcquire(usernameKey(clientIp, username), clock.getAsLong());
+  }
+
+  public long allowedCount() {
+    return allowedCount.sum();
+  }
+
+  public long ipRejectedCount() {
+    return ipRejectedCount.sum();
+  }
+
+  public long usernameRejectedCount() {
+    return usernameRejectedCount.sum();
+  }
+
+  /**
+   * Number of client IPs and of usernames per client IP with a bucket.
+   */
+  public int trackedKeys() {
+    return ipBuckets.size() + usernameBuckets.size();
+  }
+
+  private static String usernameKey(String clientIp, String username) {
+    return username + '\u0000' + clientIp;
+  }
+
+  private static long retryAfterSeconds(long waitNanos) {
+    return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+  }
+}
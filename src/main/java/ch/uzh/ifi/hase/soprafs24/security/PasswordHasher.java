@@ -0,0 +1,182 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Password Hasher
+ * Hashes and verifies passwords with bcrypt on a dedicated, bounded thread
+ * pool. A slow hash must not be able to occupy every request thread: at most
+ * {@code threads} hashes run at the same time, at most {@code queueCapacity}
+ * wait, and everything beyond that is rejected with 429 right away.
+ * The work factor is part of every hash ($2a$<cost>$...), so raising the
+ * configured strength upgrades existing hashes on the next successful login
+ * (see {@link #needsRehash(String)}).
+ */
+@Component
+public class PasswordHasher {
+
+  private static final long RETRY_AFTER_SECONDS = 1;
+
+  private static final String BUSY_MESSAGE = "The server is busy hashing passwords, please try again";
+
+  private final BCryptPasswordEncoder encoder;
+
+  private final ThreadPoolExecutor executor;
+
+  private final long timeoutMillis;
+
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  @Autowired
+  public PasswordHasher(@Value("${users.password.bcrypt-strength:10}") int strength,
+                        @Value("${users.password.hashing-threads:0}") int threads,
+                        @Value("${users.password.queue-capacity:64}") int queueCapacity,
+                        @Value("${users.password.timeout:PT5S}") Duration timeout) {
+    int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    this.encoder = new BCryptPasswordEncoder(strength);
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new HasherThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+    this.timeoutMillis = timeout.toMillis();
+  }
+
+  public String hash(String rawPassword) {
+    return execute(() -> encoder.encode(rawPassword));
+  }
+
+  /**
+   * Hashes the passwords in parallel: as many of them as the pool has threads
+   * are queued at a time, the next one as soon as the oldest is done, so a
+   * chunk of imported users uses every thread without filling the queue that
+   * logins wait in. Rejected only if not even one of them can be queued.
+   *
+   * @return the hashes, in the order of the passwords
+   */
+  public List<String> hashAll(List<String> rawPasswords) {
+    int window = executor.getMaximumPoolSize();
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    List<Future<String>> futures = new ArrayList<>(rawPasswords.size());
+    List<String> hashes = new ArrayList<>(rawPasswords.size());
+    try {
+      while (hashes.size() < rawPasswords.size()) {
+        while (futures.size() < rawPasswords.size() && futures.size() - hashes.size() < window) {
+          String rawPassword = rawPasswords.get(futures.size());
+          try {
+            futures.add(executor.submit(() -> encoder.encode(rawPassword)));
+          } catch (RejectedExecutionException e) {
+            if (futures.size() == hashes.size()) {
+              rejectedCount.incrementAndGet();
+              throw new TooManyRequestsException(BUSY_MESSAGE, RETRY_AFTER_SECONDS);
+            }
+            // the queue is full, wait for one of ours to make room
+            break;
+          }
+        }
+        hashes.add(await(futures.get(hashes.size()), timeoutNanos));
+      }
+    } catch (RuntimeException e) {
+      for (Future<String> future : futures.subList(hashes.size(), futures.size())) {
+        future.cancel(true);
+      }
+      throw e;
+    }
+    return hashes;
+  }
+
+  public boolean matches(String rawPassword, String encodedPassword) {
+    if (rawPassword == null || encodedPassword == null) {
+      return false;
+    }
+    return execute(() -> encoder.matches(rawPassword, encodedPassword));
+  }
+
+  /**
+   * Returns true if the hash was made with a lower work factor than the
+   * configured one. Cheap, the hash is only parsed.
+   */
+  public boolean needsRehash(String encodedPassword) {
+    return encoder.upgradeEncoding(encodedPassword);
+  }
+
+  /**
+   * Number of hashing tasks waiting for a thread.
+   */
+  public int queueDepth() {
+    return executor.getQueue().size();
+  }
+
+  public int activeCount() {
+    return executor.getActiveCount();
+  }
+
+  public long rejectedCount() {
+    return rejectedCount.get();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private <T> T execute(Callable<T> task) {
+    Future<T> future;
+    try {
+      future = executor.submit(task);
+    } catch (RejectedExecutionException e) {
+      rejectedCount.incrementAndGet();
+      throw new TooManyRequestsException(BUSY_MESSAGE, RETRY_AFTER_SECONDS);
+    }
+    return await(future, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+  }
+
+  private <T> T await(Future<T> future, long timeoutNanos) {
+    try {
+      return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      rejectedCount.incrementAndGet();
+      throw new TooManyRequestsException(BUSY_MESSAGE, RETRY_AFTER_SECONDS);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while hashing a password", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException("Hashing a password failed", cause);
+    }
+  }
+
+  private static final class HasherThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "password-hasher-" + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
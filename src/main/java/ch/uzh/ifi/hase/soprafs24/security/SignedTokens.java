@@ -0,0 +1,209 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Signed Tokens
+ * Self-contained session tokens that are verified without a database read:
+ * {@code <payload>.<signature>}, both base64url. The payload holds the format
+ * version, a random token id, the user id and the expiry (epoch seconds); the
+ * signature is the HMAC-SHA256 of the payload under the configured key.
+ * A valid signature proves that this server issued the token, so a token is
+ * accepted if it is signed, not expired and its id is not on the
+ * {@link TokenRevocationList}.
+ * Signed tokens are optional ({@code users.token.signed.enabled}); while they
+ * are off, clients keep getting the random token stored with the user.
+ */
+@Component
+public class SignedTokens {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  // version, token id, user id, expiry
+  private static final int PAYLOAD_LENGTH = 1 + 3 * Long.BYTES;
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private static final char SEPARATOR = '.';
+
+  private final Logger log = LoggerFactory.getLogger(SignedTokens.class);
+
+  private final boolean enabled;
+
+  private final long timeToLiveSeconds;
+
+  private final TokenRevocationList revocationList;
+
+  private final LongSupplier epochSecondsClock;
+
+  private final SecureRandom random = new SecureRandom();
+
+  // Mac is not thread-safe, every thread signs with its own instance
+  private final ThreadLocal<Mac> macs;
+
+  private final LongAdder acceptedCount = new LongAdder();
+
+  private final LongAdder rejectedCount = new LongAdder();
+
+  @Autowired
+  public SignedTokens(@Value("${users.token.signed.enabled:false}") boolean enabled,
+                      @Value("${users.token.signing-key:}") String signingKey,
+                      @Value("${users.token.ttl:PT12H}") Duration timeToLive,
+                      TokenRevocationList revocationList) {
+    this(enabled, signingKey, timeToLive, revocationList, () -> System.currentTimeMillis() / 1000);
+  }
+
+  SignedTokens(boolean enabled, String signingKey, Duration timeToLive, TokenRevocationList revocationList,
+               LongSupplier epochSecondsClock) {
+    this.enabled = enabled;
+    this.timeToLiveSeconds = timeToLive.getSeconds();
+    this.revocationList = revocationList;
+    this.epochSecondsClock = epochSecondsClock;
+    SecretKeySpec key = new SecretKeySpec(keyBytes(signingKey), ALGORITHM);
+    this.macs = ThreadLocal.withInitial(() -> {
+      try {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("Cannot sign tokens with " + ALGORITHM, e);
+      }
+    });
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Signed tokens contain a separator, the random tokens stored with the user
+   * (UUIDs) do not.
+   */
+  public static boolean isSignedToken(String token) {
+    return token != null && token.indexOf(SEPARATOR) >= 0;
+  }
+
+  /**
+   * Issues a new token for the given user that expires after the configured
+   * time to live.
+   */
+  public String issue(Long userId) {
+    ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_LENGTH)
+        .put(FORMAT_VERSION)
+        .putLong(random.nextLong())
+        .putLong(userId)
+        .putLong(epochSecondsClock.getAsLong() + timeToLiveSeconds);
+    byte[] payloadBytes = payload.array();
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    return encoder.encodeToString(payloadBytes) + SEPARATOR + encoder.encodeToString(sign(payloadBytes));
+  }
+
+  /**
+   * Verifies the given token without touching the database.
+   *
+   * @return the principal of the token, or null if it is malformed, not
+   *         signed by this server, expired or revoked
+   */
+  public UserPrincipal verify(String token) {
+    Claims claims = parse(token);
+    if (claims == null || claims.expiresAt <= epochSecondsClock.getAsLong()
+        || revocationList.isRevoked(claims.tokenId)) {
+      rejectedCount.increment();
+      return null;
+    }
+    acceptedCount.increment();
+    // signed tokens carry no username, it may have changed since the token was issued
+    return new UserPrincipal(claims.userId, null, token);
+  }
+
+  /**
+   * Revokes the given token until it expires. Tokens that would not be
+   * accepted anyway are ignored.
+   */
+  public void revoke(String token) {
+    Claims claims = parse(token);
+    if (claims != null && claims.expiresAt > epochSecondsClock.getAsLong()) {
+      revocationList.revoke(claims.tokenId, claims.expiresAt);
+    }
+  }
+
+  public long acceptedCount() {
+    return acceptedCount.sum();
+  }
+
+  public long rejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  private Claims parse(String token) {
+    int separator = token == null ? -1 : token.indexOf(SEPARATOR);
+    if (separator < 0) {
+      return null;
+    }
+    byte[] payload;
+    byte[] signature;
+    try {
+      Base64.Decoder decoder = Base64.getUrlDecoder();
+      payload = decoder.decode(token.substring(0, separator));
+      signature = decoder.decode(token.substring(separator + 1));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (payload.length != PAYLOAD_LENGTH || payload[0] != FORMAT_VERSION
+        || !MessageDigest.isEqual(signature, sign(payload))) {
+      return null;
+    }
+    ByteBuffer claims = ByteBuffer.wrap(payload, 1, PAYLOAD_LENGTH - 1);
+    return new Claims(claims.getLong(), claims.getLong(), claims.getLong());
+  }
+
+  private byte[] sign(byte[] payload) {
+    return macs.get().doFinal(payload);
+  }
+
+  private byte[] keyBytes(String signingKey) {
+    if (signingKey == null || signingKey.isEmpty()) {
+      byte[] generated = new byte[32];
+      random.nextBytes(generated);
+      if (enabled) {
+        log.warn("No users.token.signing-key configured, signed tokens are only valid on this instance "
+            + "until it restarts");
+      }
+      return generated;
+    }
+    byte[] key = Base64.getDecoder().decode(signingKey.getBytes(StandardCharsets.US_ASCII));
+    if (key.length < 32) {
+      throw new IllegalArgumentException("users.token.signing-key must be at least 32 bytes, base64 encoded");
+    }
+    return key;
+  }
+
+  private static final class Claims {
+
+    private final long tokenId;
+    private final long userId;
+    private final long expiresAt;
+
+    private Claims(long tokenId, long userId, long expiresAt) {
+      this.tokenId = tokenId;
+      this.userId = userId;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
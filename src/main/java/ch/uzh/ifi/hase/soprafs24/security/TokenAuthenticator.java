@@ -0,0 +1,69 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token Authenticator
+ * Resolves the value of an Authorization header ("Bearer <token>" or the bare
+ * token) to the principal owning the token. A signed token is verified
+ * without the database, a random one is looked up through the token cache,
+ * so the database is only hit on a cache miss. Values that are neither are
+ * refused without a lookup.
+ * Only the token kind handed out is accepted: while signed tokens are on, the
+ * random token stored with every user is refused, since it is listed by
+ * GET /users and is not replaced by a logout.
+ */
+@Component
+public class TokenAuthenticator {
+
+  private static final String BEARER_PREFIX = "Bearer ";
+
+  private final SignedTokens signedTokens;
+
+  private final UserTokenCache tokenCache;
+
+  private final UserRepository userRepository;
+
+  public TokenAuthenticator(SignedTokens signedTokens, UserTokenCache tokenCache,
+                            @Qualifier("userRepository") UserRepository userRepository) {
+    this.signedTokens = signedTokens;
+    this.tokenCache = tokenCache;
+    this.userRepository = userRepository;
+  }
+
+  /**
+   * @param authorization value of the Authorization header, may be null
+   * @return the principal or null if the token is missing or not valid
+   */
+  public UserPrincipal authenticate(String authorization) {
+    String token = bareToken(authorization);
+    if (token == null || token.isEmpty()) {
+      return null;
+    }
+    if (SignedTokens.isSignedToken(token)) {
+      return signedTokens.isEnabled() ? signedTokens.verify(token) : null;
+    }
+    if (signedTokens.isEnabled() || !isRandomToken(token)) {
+      return null;
+    }
+    return tokenCache.get(token, userRepository::findByToken);
+  }
+
+  static String bareToken(String authorization) {
+    if (authorization != null && authorization.startsWith(BEARER_PREFIX)) {
+      return authorization.substring(BEARER_PREFIX.length());
+    }
+    return authorization;
+  }
+
+  /**
+   * Random tokens are UUIDs in their canonical form, anything else cannot
+   * belong to a user.
+   */
+  static boolean isRandomToken(String token) {
+    return token.length() == 36 && token.charAt(8) == '-' && token.charAt(13) == '-'
+        && token.charAt(18) == '-' && token.charAt(23) == '-';
+  }
+}
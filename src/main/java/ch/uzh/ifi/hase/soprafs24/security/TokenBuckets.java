@@ -0,0 +1,134 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Token Buckets
+ * One token bucket per key: a bucket holds up to {@code capacity} tokens and
+ * refills continuously at {@code capacity} tokens per {@code period}. Every
+ * request takes a token, a request finding the bucket empty is refused.
+ * The buckets are spread over lock stripes, each stripe an access-ordered map
+ * bounded to its share of {@code maxKeys}: the least recently used key is
+ * dropped when a stripe is full. An evicted key starts over with a full
+ * bucket, which is what an idle key would have by now anyway.
+ */
+final class TokenBuckets {
+
+  private static final int STRIPES = 64;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+
+  private final double capacity;
+
+  private final double tokensPerNano;
+
+  TokenBuckets(int capacity, Duration period, int maxKeys) {
+    this.capacity = capacity;
+    this.tokensPerNano = capacity / (double) period.toNanos();
+    int keysPerStripe = Math.max(1, (maxKeys + STRIPES - 1) / STRIPES);
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(keysPerStripe);
+    }
+  }
+
+  /**
+   * Takes a token from the bucket of the key.
+   *
+   * @param key   the key to throttle
+   * @param now   current time of a monotonic clock, in nanoseconds
+   * @return 0 if a token was taken, otherwise the nanoseconds until the next
+   *         token is available
+   */
+  long tryAcquire(String key, long now) {
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      Bucket bucket = stripe.get(key);
+      if (bucket == null) {
+        bucket = new Bucket(capacity, now);
+        stripe.put(key, bucket);
+      } else {
+        bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.refilledAt) * tokensPerNano);
+        bucket.refilledAt = now;
+      }
+      if (bucket.tokens >= 1) {
+        bucket.tokens -= 1;
+        return 0;
+      }
+      return Math.max(1, (long) Math.ceil((1 - bucket.tokens) / tokensPerNano));
+    }
+  }
+
+  /**
+   * Looks at the bucket of the key without taking a token. A key without a
+   * bucket has a full one.
+   *
+   * @param key   the key to throttle
+   * @param now   current time of a monotonic clock, in nanoseconds
+   * @return 0 if a token is available, otherwise the nanoseconds until the
+   *         next token is available
+   */
+  long waitTime(String key, long now) {
+    Stripe stripe = stripeOf(key);
+    synchronized (stripe) {
+      Bucket bucket = stripe.get(key);
+      if (bucket == null) {
+        return 0;
+      }
+      double tokens = Math.min(capacity, bucket.tokens + (now - bucket.refilledAt) * tokensPerNano);
+      if (tokens >= 1) {
+        return 0;
+      }
+      return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+  }
+
+  /**
+   * Number of keys with a bucket.
+   */
+  int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  private Stripe stripeOf(String key) {
+    int hash = key.hashCode();
+    // spread the high bits, the stripe index only uses the low ones
+    return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  private static final class Bucket {
+
+    private double tokens;
+
+    private long refilledAt;
+
+    private Bucket(double tokens, long refilledAt) {
+      this.tokens = tokens;
+      this.refilledAt = refilledAt;
+    }
+  }
+
+  private static final class Stripe extends LinkedHashMap<String, Bucket> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxKeys;
+
+    private Stripe(int maxKeys) {
+      super(16, 0.75f, true);
+      this.maxKeys = maxKeys;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+      return size() > maxKeys;
+    }
+  }
+}
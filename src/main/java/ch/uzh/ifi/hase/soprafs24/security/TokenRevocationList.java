@@ -0,0 +1,74 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.repository.RevokedTokenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Token Revocation List
+ * The ids of the signed tokens that were revoked before they expired, held in
+ * memory so that checking a token is a map lookup by id. Revocations are
+ * written through to the database: the list survives a restart, and every
+ * instance picks up the revocations of the others with the next refresh.
+ * A token id is dropped once the token has expired, so the list only ever
+ * holds the logouts of one token lifetime.
+ */
+@Component
+public class TokenRevocationList {
+
+  private final RevokedTokenRepository revokedTokenRepository;
+
+  private final LongSupplier epochSecondsClock;
+
+  // token id -> expiry of the token in epoch seconds
+  private final Map<Long, Long> revoked = new ConcurrentHashMap<>();
+
+  @Autowired
+  public TokenRevocationList(@Qualifier("revokedTokenRepository") RevokedTokenRepository revokedTokenRepository) {
+    this(revokedTokenRepository, () -> System.currentTimeMillis() / 1000);
+  }
+
+  TokenRevocationList(RevokedTokenRepository revokedTokenRepository, LongSupplier epochSecondsClock) {
+    this.revokedTokenRepository = revokedTokenRepository;
+    this.epochSecondsClock = epochSecondsClock;
+  }
+
+  public boolean isRevoked(long tokenId) {
+    return revoked.containsKey(tokenId);
+  }
+
+  /**
+   * Revokes the token with the given id until it expires.
+   */
+  public void revoke(long tokenId, long expiresAtEpochSeconds) {
+    if (revoked.putIfAbsent(tokenId, expiresAtEpochSeconds) == null) {
+      revokedTokenRepository.save(tokenId, expiresAtEpochSeconds);
+    }
+  }
+
+  /**
+   * Reloads the revocations of all instances and forgets the ones of expired
+   * tokens, in memory and in the database.
+   */
+  @PostConstruct
+  @Scheduled(fixedDelayString = "${users.token.revocation.refresh-interval:PT30S}",
+      initialDelayString = "${users.token.revocation.refresh-interval:PT30S}")
+  public void refresh() {
+    long now = epochSecondsClock.getAsLong();
+    revokedTokenRepository.deleteExpired(now);
+    Map<Long, Long> persisted = revokedTokenRepository.findUnexpired(now);
+    revoked.putAll(persisted);
+    revoked.values().removeIf(expiresAt -> expiresAt <= now);
+  }
+
+  public int size() {
+    return revoked.size();
+  }
+}
@@ -0,0 +1,38 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+/**
+ * User Principal
+ * Immutable, detached snapshot of the fields of a user that are needed to
+ * authorize a request. Principals are cached, so they must never reference the
+ * managed User entity itself.
+ */
+public final class UserPrincipal {
+
+  private final Long id;
+  private final String username;
+  private final String token;
+
+  public UserPrincipal(Long id, String username, String token) {
+    this.id = id;
+    this.username = username;
+    this.token = token;
+  }
+
+  public static UserPrincipal of(User user) {
+    return new UserPrincipal(user.getId(), user.getUsername(), user.getToken());
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getToken() {
+    return token;
+  }
+}
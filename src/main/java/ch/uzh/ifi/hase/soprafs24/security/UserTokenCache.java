@@ -0,0 +1,116 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * User Token Cache
+ * Bounded token -> principal cache in front of the token lookup, so that
+ * authorizing a request does not cost a database round-trip every time.
+ * Entries are evicted once the maximum size is reached or after the configured
+ * time to live. Unknown tokens are remembered as well, in a separate bounded
+ * cache with a short time to live, so that repeating a well-formed but unknown
+ * token does not hit the database either; handing out a token with
+ * {@link #put(User)} forgets it as unknown.
+ * Whoever changes the token or the username of a user must invalidate the
+ * entry of the old token.
+ */
+@Component
+public class UserTokenCache {
+
+  private final Cache<String, UserPrincipal> cache;
+
+  private final Cache<String, Boolean> unknownTokens;
+
+  @Autowired
+  public UserTokenCache(@Value("${users.token-cache.maximum-size:10000}") long maximumSize,
+                        @Value("${users.token-cache.ttl:PT10M}") Duration timeToLive,
+                        @Value("${users.token-cache.unknown.maximum-size:10000}") long unknownMaximumSize,
+                        @Value("${users.token-cache.unknown.ttl:PT10S}") Duration unknownTimeToLive) {
+    this(maximumSize, timeToLive, unknownMaximumSize, unknownTimeToLive, Ticker.systemTicker());
+  }
+
+  UserTokenCache(long maximumSize, Duration timeToLive, long unknownMaximumSize, Duration unknownTimeToLive,
+                 Ticker ticker) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+    this.unknownTokens = Caffeine.newBuilder()
+        .maximumSize(unknownMaximumSize)
+        .expireAfterWrite(unknownTimeToLive)
+        .ticker(ticker)
+        .build();
+  }
+
+  /**
+   * Returns the principal owning the given token. On a miss, the user is
+   * loaded with the given loader and cached.
+   *
+   * @param token  the bare token (without "Bearer ")
+   * @param loader looks up the user by token, returns null if there is none
+   * @return the principal or null if the token is unknown
+   */
+  public UserPrincipal get(String token, Function<String, User> loader) {
+    if (unknownTokens.getIfPresent(token) != null) {
+      return null;
+    }
+    UserPrincipal principal = cache.get(token, key -> {
+      User user = loader.apply(key);
+      return user == null ? null : UserPrincipal.of(user);
+    });
+    if (principal == null) {
+      unknownTokens.put(token, Boolean.TRUE);
+    }
+    return principal;
+  }
+
+  public void put(User user) {
+    unknownTokens.invalidate(user.getToken());
+    cache.put(user.getToken(), UserPrincipal.of(user));
+  }
+
+  public void invalidate(String token) {
+    if (token != null) {
+      cache.invalidate(token);
+    }
+  }
+
+  public long hitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long missCount() {
+    return cache.stats().missCount();
+  }
+
+  public long evictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long estimatedSize() {
+    return cache.estimatedSize();
+  }
+
+  /**
+   * Number of tokens currently remembered as unknown.
+   */
+  public long unknownSize() {
+    return unknownTokens.estimatedSize();
+  }
+}
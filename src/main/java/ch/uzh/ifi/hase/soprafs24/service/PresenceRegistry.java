@@ -0,0 +1,184 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Presence Registry
+ * Tracks when every user was last seen and derives ONLINE/OFFLINE from it: a
+ * user is ONLINE while the last authenticated request is younger than the
+ * heartbeat timeout. Recording a heartbeat is an update of one map entry
+ * (ConcurrentHashMap locks only that entry's bin), so it never touches the
+ * database. Heartbeats and the flush both change entries through compute,
+ * so the flush cannot drop an entry that a heartbeat is updating.
+ * Status changes are written behind: {@link #flush()} runs periodically and
+ * persists all users whose status changed since the last run with one bulk
+ * UPDATE per status, no matter how often they were seen in between. A status
+ * only counts as persisted once the flush committed, a failed flush is
+ * repeated by the next one.
+ * Every transition is published as a STATUS_CHANGED {@link UserEvent}: coming
+ * online right away on the heartbeat, going offline when the next flush
+ * notices the timeout.
+ */
+@Component
+public class PresenceRegistry {
+
+  private final Logger log = LoggerFactory.getLogger(PresenceRegistry.class);
+
+  private static final int FLUSH_BATCH_SIZE = 1_000;
+
+  private final Map<Long, Presence> presences = new ConcurrentHashMap<>();
+
+  private final UserRepository userRepository;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final long timeoutMillis;
+
+  private final LongSupplier clock;
+
+  @Autowired
+  public PresenceRegistry(@Qualifier("userRepository") UserRepository userRepository,
+                          ApplicationEventPublisher eventPublisher,
+                          @Value("${users.presence.timeout:PT5M}") Duration timeout) {
+    this(userRepository, eventPublisher, timeout, System::currentTimeMillis);
+  }
+
+  PresenceRegistry(UserRepository userRepository, ApplicationEventPublisher eventPublisher, Duration timeout,
+                   LongSupplier clock) {
+    this.userRepository = userRepository;
+    this.eventPublisher = eventPublisher;
+    this.timeoutMillis = timeout.toMillis();
+    this.clock = clock;
+  }
+
+  /**
+   * Records that the user was active just now.
+   */
+  public void touch(Long userId) {
+    long now = clock.getAsLong();
+    long[] previous = new long[1];
+    presences.compute(userId, (id, presence) -> {
+      Presence current = presence == null ? new Presence() : presence;
+      previous[0] = current.lastSeen;
+      current.lastSeen = now;
+      return current;
+    });
+    if (now - previous[0] >= timeoutMillis) {
+      eventPublisher.publishEvent(UserEvent.statusChanged(userId, UserStatus.ONLINE));
+    }
+  }
+
+  /**
+   * Returns the current status of the user. Users that have not been seen
+   * since the start of the server are OFFLINE.
+   */
+  public UserStatus statusOf(Long userId) {
+    Presence presence = presences.get(userId);
+    return presence == null ? UserStatus.OFFLINE : presence.status(clock.getAsLong(), timeoutMillis);
+  }
+
+  /**
+   * Nobody has been seen yet after a restart, so every persisted ONLINE status
+   * is stale.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional
+  public void resetPersistedStatus() {
+    int reset = userRepository.updateStatusOfAll(UserStatus.ONLINE, UserStatus.OFFLINE);
+    log.debug("Reset {} users to OFFLINE", reset);
+  }
+
+  /**
+   * Persists every status that changed since the last flush, coalesced into
+   * bulk updates. Users that are OFFLINE and already persisted as such are
+   * dropped from the registry to keep it bounded by the active users.
+   */
+  @Scheduled(fixedDelayString = "${users.presence.flush-interval:PT30S}")
+  @Transactional
+  public void flush() {
+    long now = clock.getAsLong();
+    List<Long> cameOnline = new ArrayList<>();
+    List<Long> wentOffline = new ArrayList<>();
+
+    for (Long userId : presences.keySet()) {
+      // decided under the entry's lock: a heartbeat either came before and
+      // is seen here, or comes after and finds the entry still in the map
+      presences.computeIfPresent(userId, (id, presence) -> {
+        UserStatus status = presence.status(now, timeoutMillis);
+        if (status == presence.persistedStatus) {
+          return status == UserStatus.OFFLINE ? null : presence;
+        }
+        (status == UserStatus.ONLINE ? cameOnline : wentOffline).add(id);
+        return presence;
+      });
+    }
+
+    persist(cameOnline, UserStatus.ONLINE);
+    persist(wentOffline, UserStatus.OFFLINE);
+    TransactionCallbacks.afterCommit(() -> {
+      markPersisted(cameOnline, UserStatus.ONLINE);
+      markPersisted(wentOffline, UserStatus.OFFLINE);
+    });
+    for (Long userId : wentOffline) {
+      eventPublisher.publishEvent(UserEvent.statusChanged(userId, UserStatus.OFFLINE));
+    }
+    if (!cameOnline.isEmpty() || !wentOffline.isEmpty()) {
+      log.debug("Persisted presence: {} online, {} offline", cameOnline.size(), wentOffline.size());
+    }
+  }
+
+  /**
+   * Number of users currently tracked.
+   */
+  public int size() {
+    return presences.size();
+  }
+
+  private void persist(List<Long> userIds, UserStatus status) {
+    for (int from = 0; from < userIds.size(); from += FLUSH_BATCH_SIZE) {
+      userRepository.updateStatus(userIds.subList(from, Math.min(from + FLUSH_BATCH_SIZE, userIds.size())), status);
+    }
+  }
+
+  private void markPersisted(List<Long> userIds, UserStatus status) {
+    for (Long userId : userIds) {
+      // the entry stays until its OFFLINE status is persisted, it is only
+      // dropped by the next flush
+      presences.computeIfPresent(userId, (id, presence) -> {
+        presence.persistedStatus = status;
+        return presence;
+      });
+    }
+  }
+
+  private static final class Presence {
+
+    private volatile long lastSeen;
+
+    // status as of the last flush, null if it has not been written yet
+    private volatile UserStatus persistedStatus;
+
+    private UserStatus status(long now, long timeoutMillis) {
+      return now - lastSeen < timeoutMillis ? UserStatus.ONLINE : UserStatus.OFFLINE;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Transaction Callbacks
+ * Defers work that must only happen once the changes of the current
+ * transaction are committed.
+ */
+final class TransactionCallbacks {
+
+  private TransactionCallbacks() {
+  }
+
+  /**
+   * Runs the action after the current transaction commits, not at all if it
+   * rolls back, and right away if there is no transaction.
+   */
+  static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+}
@@ -0,0 +1,55 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.BatchItemStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+/**
+ * Outcome of a single item of a batch import. The user is only set if the
+ * item was created, the message only if it was rejected.
+ */
+public class UserBatchResult {
+
+  private final int index;
+  private final BatchItemStatus status;
+  private final User user;
+  private final String message;
+
+  private UserBatchResult(int index, BatchItemStatus status, User user, String message) {
+    this.index = index;
+    this.status = status;
+    this.user = user;
+    this.message = message;
+  }
+
+  static UserBatchResult created(int index, User user) {
+    return new UserBatchResult(index, BatchItemStatus.CREATED, user, null);
+  }
+
+  static UserBatchResult conflict(int index, String message) {
+    return new UserBatchResult(index, BatchItemStatus.CONFLICT, null, message);
+  }
+
+  static UserBatchResult invalid(int index, String message) {
+    return new UserBatchResult(index, BatchItemStatus.INVALID, null, message);
+  }
+
+  static UserBatchResult throttled(int index, String message) {
+    return new UserBatchResult(index, BatchItemStatus.THROTTLED, null, message);
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public BatchItemStatus getStatus() {
+    return status;
+  }
+
+  public User getUser() {
+    return user;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+}
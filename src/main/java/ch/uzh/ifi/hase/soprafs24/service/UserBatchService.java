@@ -0,0 +1,204 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UniqueConstraintViolations;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * User Batch Service
+ * Creates many users at once. The input is processed in chunks: every chunk
+ * checks its usernames against the existing rows with one set-based query and
+ * is then inserted with JDBC batching in a transaction of its own, so a
+ * failing chunk does not undo the chunks before it. Invalid or conflicting
+ * items are reported per item and do not abort the import: a chunk that
+ * still runs into the unique constraint, because a username was taken in
+ * the meantime, is inserted again row by row to find the conflicting items.
+ * The passwords of a chunk are hashed in parallel before its transaction is
+ * opened.
+ */
+@Service
+public class UserBatchService {
+
+  private final Logger log = LoggerFactory.getLogger(UserBatchService.class);
+
+  private final UserRepository userRepository;
+
+  private final TransactionTemplate transactionTemplate;
+
+  private final PasswordHasher passwordHasher;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final int chunkSize;
+
+  @Autowired
+  public UserBatchService(@Qualifier("userRepository") UserRepository userRepository,
+                          PlatformTransactionManager transactionManager,
+                          PasswordHasher passwordHasher,
+                          ApplicationEventPublisher eventPublisher,
+                          @Value("${users.batch.chunk-size:500}") int chunkSize) {
+    this.userRepository = userRepository;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.passwordHasher = passwordHasher;
+    this.eventPublisher = eventPublisher;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Creates the given users.
+   *
+   * @param newUsers users to create, in import order
+   * @return one result per input item, in the same order
+   */
+  public List<UserBatchResult> createUsers(List<User> newUsers) {
+    UserBatchResult[] results = new UserBatchResult[newUsers.size()];
+    Set<String> importedUsernames = new HashSet<>();
+
+    int offset = 0;
+    try {
+      for (; offset < newUsers.size(); offset += chunkSize) {
+        List<User> chunk = newUsers.subList(offset, Math.min(offset + chunkSize, newUsers.size()));
+        createChunk(chunk, offset, importedUsernames, results);
+      }
+    } catch (TooManyRequestsException e) {
+      // the hashing pool is saturated: the chunks before stay created, the
+      // rest of the import is reported as not attempted
+      for (int index = offset; index < results.length; index++) {
+        if (results[index] == null) {
+          results[index] = UserBatchResult.throttled(index, e.getMessage());
+        }
+      }
+    }
+
+    log.debug("Imported {} users", newUsers.size());
+    return Arrays.asList(results);
+  }
+
+  private void createChunk(List<User> chunk, int offset, Set<String> importedUsernames,
+                           UserBatchResult[] results) {
+    List<Integer> candidateIndexes = new ArrayList<>(chunk.size());
+    Set<String> candidateUsernames = new HashSet<>();
+
+    for (int i = 0; i < chunk.size(); i++) {
+      User newUser = chunk.get(i);
+      int index = offset + i;
+      if (newUser == null || isBlank(newUser.getUsername()) || isBlank(newUser.getPassword())) {
+        results[index] = UserBatchResult.invalid(index, "Username and password cannot be empty");
+      } else if (isBlank(newUser.getName())) {
+        results[index] = UserBatchResult.invalid(index, "Name cannot be empty");
+      } else if (!importedUsernames.add(newUser.getUsername())) {
+        results[index] = UserBatchResult.conflict(index,
+            "Username " + newUser.getUsername() + " appears more than once in this import");
+      } else {
+        candidateIndexes.add(index);
+        candidateUsernames.add(newUser.getUsername());
+      }
+    }
+    if (candidateIndexes.isEmpty()) {
+      return;
+    }
+
+    // one query for the whole chunk instead of one probe per user
+    Set<String> takenUsernames = userRepository.findExistingUsernames(candidateUsernames);
+
+    List<User> usersToInsert = new ArrayList<>(candidateIndexes.size());
+    List<Integer> insertedIndexes = new ArrayList<>(candidateIndexes.size());
+    for (int index : candidateIndexes) {
+      User newUser = chunk.get(index - offset);
+      if (takenUsernames.contains(newUser.getUsername())) {
+        results[index] = UserBatchResult.conflict(index,
+            "Username " + newUser.getUsername() + " is already taken");
+      } else {
+        UserService.initializeNewUser(newUser);
+        // imported users have not logged in yet
+        newUser.setStatus(UserStatus.OFFLINE);
+        usersToInsert.add(newUser);
+        insertedIndexes.add(index);
+      }
+    }
+    if (usersToInsert.isEmpty()) {
+      return;
+    }
+
+    // the whole chunk is handed to the hashing pool at once
+    List<String> rawPasswords = new ArrayList<>(usersToInsert.size());
+    for (User user : usersToInsert) {
+      rawPasswords.add(user.getPassword());
+    }
+    List<String> hashes = passwordHasher.hashAll(rawPasswords);
+    for (int i = 0; i < usersToInsert.size(); i++) {
+      usersToInsert.get(i).setPassword(hashes.get(i));
+    }
+
+    try {
+      insert(usersToInsert);
+    } catch (DataIntegrityViolationException e) {
+      if (!UniqueConstraintViolations.isUniqueViolation(e)) {
+        throw e;
+      }
+      // a username was taken since the check above -> find it row by row
+      insertOneByOne(usersToInsert, insertedIndexes, results);
+      return;
+    }
+    for (int i = 0; i < usersToInsert.size(); i++) {
+      created(insertedIndexes.get(i), usersToInsert.get(i), results);
+    }
+  }
+
+  private void insertOneByOne(List<User> users, List<Integer> indexes, UserBatchResult[] results) {
+    for (int i = 0; i < users.size(); i++) {
+      User user = users.get(i);
+      int index = indexes.get(i);
+      // the rolled back insert left an id and a version behind
+      user.setId(null);
+      user.setVersion(null);
+      try {
+        insert(Collections.singletonList(user));
+        created(index, user, results);
+      } catch (DataIntegrityViolationException e) {
+        if (!UniqueConstraintViolations.isUniqueViolation(e)) {
+          throw e;
+        }
+        results[index] = UserBatchResult.conflict(index, "Username " + user.getUsername() + " is already taken");
+      }
+    }
+  }
+
+  // the inserts are sent as JDBC batches (hibernate.jdbc.batch_size), the
+  // persistence context ends with the transaction
+  private void insert(List<User> users) {
+    transactionTemplate.executeWithoutResult(status -> {
+      userRepository.saveAll(users);
+      userRepository.flush();
+    });
+  }
+
+  private void created(int index, User user, UserBatchResult[] results) {
+    results[index] = UserBatchResult.created(index, user);
+    eventPublisher.publishEvent(UserEvent.created(user, UserStatus.OFFLINE));
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.isEmpty();
+  }
+}
@@ -0,0 +1,72 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserEventType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+import java.util.Date;
+
+/**
+ * User Event
+ * Immutable notification that a user was created, changed its presence status
+ * or updated its profile. Published as a Spring application event by the
+ * UserService and the PresenceRegistry and pushed to clients by the
+ * UserEventBroadcaster. Carries the public fields only, never the token.
+ */
+public class UserEvent {
+
+  private final UserEventType type;
+  private final Long userId;
+  private final String name;
+  private final String username;
+  private final Date birthday;
+  private final UserStatus status;
+
+  public UserEvent(UserEventType type, Long userId, String name, String username, Date birthday,
+                   UserStatus status) {
+    this.type = type;
+    this.userId = userId;
+    this.name = name;
+    this.username = username;
+    this.birthday = birthday;
+    this.status = status;
+  }
+
+  static UserEvent created(User user, UserStatus status) {
+    return new UserEvent(UserEventType.CREATED, user.getId(), user.getName(), user.getUsername(),
+        user.getBirthday(), status);
+  }
+
+  static UserEvent profileUpdated(User user) {
+    return new UserEvent(UserEventType.PROFILE_UPDATED, user.getId(), user.getName(), user.getUsername(),
+        user.getBirthday(), null);
+  }
+
+  static UserEvent statusChanged(Long userId, UserStatus status) {
+    return new UserEvent(UserEventType.STATUS_CHANGED, userId, null, null, null, status);
+  }
+
+  public UserEventType getType() {
+    return type;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public Date getBirthday() {
+    return birthday;
+  }
+
+  public UserStatus getStatus() {
+    return status;
+  }
+}
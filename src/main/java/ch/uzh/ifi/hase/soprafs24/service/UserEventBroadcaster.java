@@ -0,0 +1,288 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * User Event Broadcaster
+ * Pushes every {@link UserEvent} to the connected server-sent event clients.
+ * Events get a strictly increasing sequence number that is sent as the SSE id,
+ * and the most recent ones are kept in a ring buffer, so a client reconnecting
+ * with a Last-Event-ID header receives exactly the events it missed.
+ * Every client has its own bounded buffer that is drained by a sender task,
+ * a slow client therefore never blocks the request that produced the event.
+ * Pending events of the same user and type are coalesced, only the newest one
+ * is sent. If a client falls behind by more than the buffer size, its buffer
+ * is replaced by a single RESET event: the client has to reload GET /users and
+ * can then continue with the events that follow.
+ * The sender tasks run on a fixed number of threads with a bounded queue of
+ * clients waiting to be drained. When slow clients keep all threads busy and
+ * the queue is full, a client that cannot be queued is disconnected; it
+ * reconnects with its Last-Event-ID and gets the events it missed.
+ */
+@Component
+public class UserEventBroadcaster {
+
+  private final Logger log = LoggerFactory.getLogger(UserEventBroadcaster.class);
+
+  public static final String RESET_EVENT = "RESET";
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  private final SequencedEvent[] history;
+
+  // sequence numbers start at the boot time so that ids of a previous server
+  // run are never mistaken for ids of this one
+  private final long firstSequence;
+
+  private long sequence;
+
+  private final int bufferSize;
+
+  private final long timeoutMillis;
+
+  private final ExecutorService sender;
+
+  public UserEventBroadcaster(@Value("${users.events.history-size:1024}") int historySize,
+                              @Value("${users.events.buffer-size:256}") int bufferSize,
+                              @Value("${users.events.timeout:PT30M}") Duration timeout,
+                              @Value("${users.events.sender-threads:8}") int senderThreads,
+                              @Value("${users.events.sender-queue-capacity:1024}") int senderQueueCapacity) {
+    this.history = new SequencedEvent[historySize];
+    this.sequence = System.currentTimeMillis() << 20;
+    this.firstSequence = sequence + 1;
+    this.bufferSize = bufferSize;
+    this.timeoutMillis = timeout.toMillis();
+    AtomicInteger threadNumber = new AtomicInteger();
+    // at most one drain task per client is queued or running at a time
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(senderQueueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "user-events-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    this.sender = executor;
+  }
+
+  /**
+   * Opens a new event stream.
+   *
+   * @param lastEventId id of the last event the client received, null for a new client
+   * @return the emitter to return from the controller
+   */
+  public SseEmitter subscribe(Long lastEventId) {
+    SseEmitter emitter = new SseEmitter(timeoutMillis);
+    Subscriber subscriber = new Subscriber(emitter);
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(emitter::complete);
+    emitter.onError(error -> subscribers.remove(subscriber));
+
+    // replaying and registering under the same lock as publish() guarantees
+    // that no event is lost or delivered twice in between
+    synchronized (this) {
+      if (lastEventId != null && lastEventId != sequence) {
+        long oldestRetained = Math.max(firstSequence, sequence - history.length + 1);
+        if (lastEventId < oldestRetained - 1 || lastEventId > sequence) {
+          subscriber.reset(sequence);
+        } else {
+          for (long replayed = lastEventId + 1; replayed <= sequence; replayed++) {
+            subscriber.offer(history[slotOf(replayed)]);
+          }
+        }
+      }
+      subscribers.add(subscriber);
+    }
+    subscriber.scheduleDrain();
+    return emitter;
+  }
+
+  /**
+   * Creations and profile updates are only announced once their transaction
+   * committed.
+   */
+  @TransactionalEventListener(fallbackExecution = true,
+      condition = "#event.type != T(ch.uzh.ifi.hase.soprafs24.constant.UserEventType).STATUS_CHANGED")
+  public void onUserChanged(UserEvent event) {
+    publish(event);
+  }
+
+  /**
+   * Status changes come from the in-memory presence registry and are announced
+   * right away, even if the surrounding transaction rolls back.
+   */
+  @EventListener(condition = "#event.type == T(ch.uzh.ifi.hase.soprafs24.constant.UserEventType).STATUS_CHANGED")
+  public void onStatusChanged(UserEvent event) {
+    publish(event);
+  }
+
+  /**
+   * Number of connected clients.
+   */
+  public int subscriberCount() {
+    return subscribers.size();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.emitter.complete();
+    }
+    sender.shutdownNow();
+  }
+
+  synchronized void publish(UserEvent event) {
+    SequencedEvent sequenced = new SequencedEvent(++sequence, event);
+    history[slotOf(sequenced.sequence)] = sequenced;
+    // fanning out only appends to the buffers, sending happens on the sender threads
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(sequenced);
+      subscriber.scheduleDrain();
+    }
+  }
+
+  private int slotOf(long eventSequence) {
+    return (int) (eventSequence % history.length);
+  }
+
+  private static final class SequencedEvent {
+
+    private final long sequence;
+
+    private final UserEvent event;
+
+    private SequencedEvent(long sequence, UserEvent event) {
+      this.sequence = sequence;
+      this.event = event;
+    }
+
+    private String coalescingKey() {
+      return event.getUserId() + ":" + event.getType();
+    }
+  }
+
+  private final class Subscriber {
+
+    private final SseEmitter emitter;
+
+    // guarded by itself; removing before putting moves a replaced event to the
+    // end, so the iteration order stays the sequence order
+    private final Map<String, SequencedEvent> pending = new LinkedHashMap<>();
+
+    // sequence of a pending RESET event, 0 if there is none
+    private long pendingReset;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private volatile boolean closed;
+
+    private Subscriber(SseEmitter emitter) {
+      this.emitter = emitter;
+    }
+
+    private void offer(SequencedEvent event) {
+      synchronized (pending) {
+        String key = event.coalescingKey();
+        pending.remove(key);
+        if (pending.size() < bufferSize) {
+          pending.put(key, event);
+        } else {
+          pending.clear();
+          pendingReset = event.sequence;
+        }
+      }
+    }
+
+    private void reset(long atSequence) {
+      synchronized (pending) {
+        pending.clear();
+        pendingReset = atSequence;
+      }
+    }
+
+    private void scheduleDrain() {
+      if (!closed && draining.compareAndSet(false, true)) {
+        try {
+          sender.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+          // every sender thread is busy and the queue is full
+          log.debug("Disconnecting user event subscriber, the sender is saturated");
+          draining.set(false);
+          closed = true;
+          subscribers.remove(this);
+          emitter.complete();
+        }
+      }
+    }
+
+    private void drain() {
+      try {
+        List<SseEmitter.SseEventBuilder> batch;
+        while (!closed && !(batch = takePending()).isEmpty()) {
+          for (SseEmitter.SseEventBuilder event : batch) {
+            emitter.send(event);
+          }
+        }
+      } catch (IOException | IllegalStateException e) {
+        // the client disconnected or the emitter already completed
+        log.debug("Dropping user event subscriber: {}", e.getMessage());
+        closed = true;
+        subscribers.remove(this);
+        emitter.completeWithError(e);
+      } finally {
+        draining.set(false);
+      }
+      // an event may have arrived after the last takePending()
+      if (hasPending()) {
+        scheduleDrain();
+      }
+    }
+
+    private List<SseEmitter.SseEventBuilder> takePending() {
+      synchronized (pending) {
+        List<SseEmitter.SseEventBuilder> batch = new ArrayList<>(pending.size() + 1);
+        if (pendingReset != 0) {
+          batch.add(SseEmitter.event().id(Long.toString(pendingReset)).name(RESET_EVENT).data(""));
+          pendingReset = 0;
+        }
+        for (SequencedEvent sequenced : pending.values()) {
+          batch.add(SseEmitter.event()
+              .id(Long.toString(sequenced.sequence))
+              .name(sequenced.event.getType().name())
+              .data(sequenced.event, MediaType.APPLICATION_JSON));
+        }
+        pending.clear();
+        return batch;
+      }
+    }
+
+    private boolean hasPending() {
+      synchronized (pending) {
+        return pendingReset != 0 || !pending.isEmpty();
+      }
+    }
+  }
+}
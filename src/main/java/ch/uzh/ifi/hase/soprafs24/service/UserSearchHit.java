@@ -0,0 +1,39 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+/**
+ * One result of a {@link UserSearchIndex} query. The score is only meaningful
+ * relative to the other hits of the same query.
+ */
+public class UserSearchHit {
+
+  private final Long id;
+
+  private final String username;
+
+  private final String name;
+
+  private final double score;
+
+  UserSearchHit(Long id, String username, String name, double score) {
+    this.id = id;
+    this.username = username;
+    this.name = name;
+    this.score = score;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public double getScore() {
+    return score;
+  }
+}
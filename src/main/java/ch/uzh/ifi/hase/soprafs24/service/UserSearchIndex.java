@@ -0,0 +1,490 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.repository.UserStreamRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * User Search Index
+ * In-memory index over the username and the name of every user, answering
+ * case-insensitive prefix queries and fuzzy queries with typos.
+ * Prefixes are looked up in a sorted set of terms (the username, the name and
+ * every word of the name), fuzzy matches through trigram postings: the users
+ * sharing the most trigrams with the query are scored with the Dice
+ * coefficient of their trigrams. Exact matches rank before username prefixes,
+ * which rank before name prefixes, which rank before fuzzy matches.
+ * To keep the index small, trigrams are encoded as longs, the postings are
+ * arrays of user ids and the trigrams of a user are not stored but computed
+ * again when the user is scored.
+ * The index is loaded once at startup and then kept up to date with the
+ * CREATED and PROFILE_UPDATED {@link UserEvent}s. Reads do not lock, updates
+ * are serialized.
+ */
+@Component
+public class UserSearchIndex {
+
+  private final Logger log = LoggerFactory.getLogger(UserSearchIndex.class);
+
+  static final double MIN_SIMILARITY = 0.3;
+
+  // upper bound for the users scored per fuzzy query, the ones sharing the
+  // most trigrams with the query; keeps queries on common trigrams fast no
+  // matter how many users exist
+  private static final int MAX_FUZZY_CANDIDATES = 1_000;
+
+  // upper bound for the users counted per fuzzy query: the postings are
+  // counted rarest first, the more common ones only add to users seen before
+  private static final int MAX_COUNTED_USERS = 20 * MAX_FUZZY_CANDIDATES;
+
+  private static final int PREFIX_SCAN_FACTOR = 4;
+
+  // upper bound for the terms looked at per prefix query
+  private static final int MAX_PREFIX_TERMS = 20_000;
+
+  private static final char SEPARATOR = '\u0000';
+
+  private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+  // "term\0id", sorted, so all terms with a prefix form one contiguous range
+  private final ConcurrentSkipListSet<String> terms = new ConcurrentSkipListSet<>();
+
+  private final Map<Long, Postings> trigramPostings = new ConcurrentHashMap<>();
+
+  private final UserStreamRepository userStreamRepository;
+
+  public UserSearchIndex(@Qualifier("userStreamRepository") UserStreamRepository userStreamRepository) {
+    this.userStreamRepository = userStreamRepository;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    // users changed by an event in the meantime are newer than the streamed row
+    userStreamRepository.forEachUser(user -> index(user.getId(), user.getUsername(), user.getName(), false));
+    log.debug("Indexed {} users for search", entries.size());
+  }
+
+  @TransactionalEventListener(fallbackExecution = true,
+      condition = "#event.type != T(ch.uzh.ifi.hase.soprafs24.constant.UserEventType).STATUS_CHANGED")
+  public void onUserChanged(UserEvent event) {
+    index(event.getUserId(), event.getUsername(), event.getName(), true);
+  }
+
+  /**
+   * Adds the user to the index or replaces its previous entry.
+   */
+  public void index(Long userId, String username, String name) {
+    index(userId, username, name, true);
+  }
+
+  public synchronized void remove(Long userId) {
+    Entry previous = entries.get(userId);
+    if (previous != null) {
+      unindex(previous);
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the best matches for the query, best first.
+   *
+   * @param query the search text, case-insensitive
+   * @param limit maximum number of hits
+   */
+  public List<UserSearchHit> search(String query, int limit) {
+    String normalizedQuery = normalize(query);
+    if (normalizedQuery.isEmpty() || limit <= 0) {
+      return Collections.emptyList();
+    }
+    long[] queryTrigrams = trigramsOf(normalizedQuery);
+    Map<Long, UserSearchHit> hits = new HashMap<>();
+
+    for (Long userId : prefixCandidates(normalizedQuery, limit * PREFIX_SCAN_FACTOR)) {
+      addHit(hits, userId, normalizedQuery, queryTrigrams);
+    }
+
+    for (long userId : fuzzyCandidates(queryTrigrams)) {
+      if (!hits.containsKey(userId)) {
+        addHit(hits, userId, normalizedQuery, queryTrigrams);
+      }
+    }
+
+    Comparator<UserSearchHit> ranking = Comparator.comparingDouble(UserSearchHit::getScore)
+        .thenComparing(UserSearchHit::getUsername, Comparator.reverseOrder());
+    PriorityQueue<UserSearchHit> best = new PriorityQueue<>(limit + 1, ranking);
+    for (UserSearchHit hit : hits.values()) {
+      best.add(hit);
+      if (best.size() > limit) {
+        best.poll();
+      }
+    }
+    List<UserSearchHit> result = new ArrayList<>(best);
+    result.sort(ranking.reversed());
+    return result;
+  }
+
+  private synchronized void index(Long userId, String username, String name, boolean replace) {
+    Entry previous = entries.get(userId);
+    if (previous != null) {
+      if (!replace) {
+        return;
+      }
+      unindex(previous);
+    }
+    Entry entry = new Entry(userId, username, name);
+    // the entry goes in first, readers skip terms without one
+    entries.put(userId, entry);
+    for (String term : entry.terms()) {
+      terms.add(term + SEPARATOR + userId);
+    }
+    for (long trigram : entry.trigrams()) {
+      Postings postings = trigramPostings.get(trigram);
+      trigramPostings.put(trigram, postings == null ? Postings.of(userId) : postings.with(userId));
+    }
+  }
+
+  private void unindex(Entry entry) {
+    for (String term : entry.terms()) {
+      terms.remove(term + SEPARATOR + entry.userId);
+    }
+    for (long trigram : entry.trigrams()) {
+      Postings postings = trigramPostings.get(trigram);
+      if (postings != null) {
+        Postings remaining = postings.without(entry.userId);
+        if (remaining == null) {
+          trigramPostings.remove(trigram);
+        } else {
+          trigramPostings.put(trigram, remaining);
+        }
+      }
+    }
+    entries.remove(entry.userId);
+  }
+
+  /**
+   * Users with a term starting with the query, the ones with the shortest
+   * terms first: they are the closest to the query, and the exact match is
+   * among them. The terms are sorted alphabetically, not by length, so the
+   * range is scanned further than the candidates needed.
+   */
+  private List<Long> prefixCandidates(String query, int maxCandidates) {
+    Comparator<String> byLength = Comparator.comparingInt(term -> term.lastIndexOf(SEPARATOR));
+    PriorityQueue<String> shortest = new PriorityQueue<>(maxCandidates + 1, byLength.reversed());
+    int scanned = 0;
+    for (String term : terms.subSet(query, true, query + Character.MAX_VALUE, false)) {
+      shortest.add(term);
+      if (shortest.size() > maxCandidates) {
+        shortest.poll();
+      }
+      if (++scanned >= MAX_PREFIX_TERMS) {
+        break;
+      }
+    }
+    List<Long> candidates = new ArrayList<>(shortest.size());
+    for (String term : shortest) {
+      candidates.add(Long.valueOf(term.substring(term.lastIndexOf(SEPARATOR) + 1)));
+    }
+    return candidates;
+  }
+
+  /**
+   * Users sharing at least one trigram with the query, at most
+   * {@link #MAX_FUZZY_CANDIDATES} of them, the ones sharing the most first.
+   */
+  private long[] fuzzyCandidates(long[] queryTrigrams) {
+    List<Postings> postings = new ArrayList<>(queryTrigrams.length);
+    for (long trigram : queryTrigrams) {
+      Postings trigramUsers = trigramPostings.get(trigram);
+      if (trigramUsers != null) {
+        postings.add(trigramUsers);
+      }
+    }
+    // rare trigrams are the most selective ones
+    postings.sort(Comparator.comparingInt(trigramUsers -> trigramUsers.size));
+
+    OverlapCounts overlaps = new OverlapCounts();
+    for (Postings trigramUsers : postings) {
+      for (int i = 0; i < trigramUsers.size; i++) {
+        overlaps.increment(trigramUsers.userIds[i], overlaps.size < MAX_COUNTED_USERS);
+      }
+    }
+    return overlaps.mostOverlapping(MAX_FUZZY_CANDIDATES, queryTrigrams.length);
+  }
+
+  private void addHit(Map<Long, UserSearchHit> hits, Long userId, String query, long[] queryTrigrams) {
+    Entry entry = entries.get(userId);
+    if (entry == null) {
+      return;
+    }
+    double similarity = Math.max(dice(queryTrigrams, trigramsOf(entry.username)),
+        dice(queryTrigrams, trigramsOf(entry.name)));
+    double score;
+    if (query.equals(entry.username) || query.equals(entry.name)) {
+      score = 3 + similarity;
+    } else if (entry.username.startsWith(query)) {
+      score = 2 + similarity;
+    } else if (entry.hasNamePrefix(query)) {
+      score = 1 + similarity;
+    } else if (similarity >= MIN_SIMILARITY) {
+      score = similarity;
+    } else {
+      return;
+    }
+    hits.put(userId, new UserSearchHit(userId, entry.originalUsername, entry.originalName, score));
+  }
+
+  // both arrays sorted and without duplicates
+  private static double dice(long[] queryTrigrams, long[] trigrams) {
+    if (queryTrigrams.length == 0 || trigrams.length == 0) {
+      return 0;
+    }
+    int shared = 0;
+    for (int q = 0, t = 0; q < queryTrigrams.length && t < trigrams.length;) {
+      if (queryTrigrams[q] == trigrams[t]) {
+        shared++;
+        q++;
+        t++;
+      } else if (queryTrigrams[q] < trigrams[t]) {
+        q++;
+      } else {
+        t++;
+      }
+    }
+    return 2.0 * shared / (queryTrigrams.length + trigrams.length);
+  }
+
+  static String normalize(String value) {
+    return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * The trigrams of the padded value, three chars packed into a long, sorted
+   * and without duplicates.
+   */
+  static long[] trigramsOf(String normalized) {
+    if (normalized.isEmpty()) {
+      return new long[0];
+    }
+    String padded = "  " + normalized + " ";
+    long[] trigrams = new long[padded.length() - 2];
+    for (int i = 0; i < trigrams.length; i++) {
+      trigrams[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+    }
+    Arrays.sort(trigrams);
+    int distinct = 0;
+    for (int i = 0; i < trigrams.length; i++) {
+      if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+        trigrams[distinct++] = trigrams[i];
+      }
+    }
+    return distinct == trigrams.length ? trigrams : Arrays.copyOf(trigrams, distinct);
+  }
+
+  private static final class Entry {
+
+    private final long userId;
+
+    private final String originalUsername;
+
+    private final String originalName;
+
+    private final String username;
+
+    private final String name;
+
+    private Entry(long userId, String username, String name) {
+      this.userId = userId;
+      this.originalUsername = username;
+      this.originalName = name;
+      this.username = normalize(username);
+      this.name = normalize(name);
+    }
+
+    private Set<String> terms() {
+      Set<String> terms = new LinkedHashSet<>();
+      if (!username.isEmpty()) {
+        terms.add(username);
+      }
+      if (!name.isEmpty()) {
+        terms.add(name);
+        terms.addAll(Arrays.asList(name.split("\\s+")));
+      }
+      return terms;
+    }
+
+    private boolean hasNamePrefix(String query) {
+      for (int i = 0; i < name.length(); i++) {
+        // the name or one of its words starts here
+        if ((i == 0 || Character.isWhitespace(name.charAt(i - 1))) && name.startsWith(query, i)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private long[] trigrams() {
+      long[] usernameTrigrams = trigramsOf(username);
+      long[] nameTrigrams = trigramsOf(name);
+      long[] trigrams = Arrays.copyOf(usernameTrigrams, usernameTrigrams.length + nameTrigrams.length);
+      System.arraycopy(nameTrigrams, 0, trigrams, usernameTrigrams.length, nameTrigrams.length);
+      return Arrays.stream(trigrams).sorted().distinct().toArray();
+    }
+  }
+
+  /**
+   * The users having one trigram, an immutable view of an array that is
+   * appended to in place: a new element goes behind the size of every view
+   * of the array, so readers holding an older view are not affected.
+   * Removing an element copies the array.
+   */
+  private static final class Postings {
+
+    private final long[] userIds;
+
+    private final int size;
+
+    private Postings(long[] userIds, int size) {
+      this.userIds = userIds;
+      this.size = size;
+    }
+
+    private static Postings of(long userId) {
+      return new Postings(new long[] { userId }, 1);
+    }
+
+    private Postings with(long userId) {
+      long[] appended = size < userIds.length ? userIds : Arrays.copyOf(userIds, size + (size >> 1) + 1);
+      appended[size] = userId;
+      return new Postings(appended, size + 1);
+    }
+
+    // null if the user was the only one
+    private Postings without(long userId) {
+      for (int i = 0; i < size; i++) {
+        if (userIds[i] == userId) {
+          if (size == 1) {
+            return null;
+          }
+          long[] remaining = new long[size - 1];
+          System.arraycopy(userIds, 0, remaining, 0, i);
+          System.arraycopy(userIds, i + 1, remaining, i, size - i - 1);
+          return new Postings(remaining, size - 1);
+        }
+      }
+      return this;
+    }
+  }
+
+  /**
+   * Counts per user how many trigrams of the query it shares, in an open
+   * addressing table of primitive longs. Ids are positive, 0 marks a free
+   * slot.
+   */
+  private static final class OverlapCounts {
+
+    private long[] userIds = new long[1_024];
+
+    private int[] counts = new int[1_024];
+
+    private int size;
+
+    private void increment(long userId, boolean admitNew) {
+      int mask = userIds.length - 1;
+      int slot = slotOf(userId, mask);
+      while (userIds[slot] != 0) {
+        if (userIds[slot] == userId) {
+          counts[slot]++;
+          return;
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (!admitNew) {
+        return;
+      }
+      userIds[slot] = userId;
+      counts[slot] = 1;
+      if (++size * 2 > userIds.length) {
+        grow();
+      }
+    }
+
+    /**
+     * The users with the highest counts, at most {@code limit} of them.
+     */
+    private long[] mostOverlapping(int limit, int maxCount) {
+      int[] usersPerCount = new int[maxCount + 2];
+      for (int slot = 0; slot < userIds.length; slot++) {
+        if (userIds[slot] != 0) {
+          usersPerCount[Math.min(counts[slot], maxCount + 1)]++;
+        }
+      }
+      // the lowest count that still makes it, users with it fill the rest
+      int minCount = usersPerCount.length - 1;
+      int above = 0;
+      while (minCount > 1 && above + usersPerCount[minCount] < limit) {
+        above += usersPerCount[minCount];
+        minCount--;
+      }
+      long[] selected = new long[Math.min(limit, size)];
+      int taken = 0;
+      int atMinCount = limit - above;
+      for (int slot = 0; slot < userIds.length && taken < selected.length; slot++) {
+        if (userIds[slot] == 0 || counts[slot] < minCount) {
+          continue;
+        }
+        if (counts[slot] == minCount) {
+          if (atMinCount == 0) {
+            continue;
+          }
+          atMinCount--;
+        }
+        selected[taken++] = userIds[slot];
+      }
+      return taken == selected.length ? selected : Arrays.copyOf(selected, taken);
+    }
+
+    private void grow() {
+      long[] oldUserIds = userIds;
+      int[] oldCounts = counts;
+      userIds = new long[oldUserIds.length * 2];
+      counts = new int[oldCounts.length * 2];
+      int mask = userIds.length - 1;
+      for (int i = 0; i < oldUserIds.length; i++) {
+        if (oldUserIds[i] != 0) {
+          int slot = slotOf(oldUserIds[i], mask);
+          while (userIds[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          userIds[slot] = oldUserIds[i];
+          counts[slot] = oldCounts[i];
+        }
+      }
+    }
+
+    private static int slotOf(long userId, int mask) {
+      long hash = userId * 0x9E3779B97F4A7C15L;
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+  }
+}
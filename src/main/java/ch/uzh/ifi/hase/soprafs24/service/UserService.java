@@ -2,19 +2,34 @@ package ch.uzh.ifi.hase.soprafs24.service;
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidUserException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.NotProfileOwnerException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserModifiedException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserStreamRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.SignedTokens;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.security.UserTokenCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.http.HttpStatus;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * User Service
@@ -22,117 +37,240 @@ import java.util.UUID;
  * the user
  * (e.g., it creates, modifies, deletes, finds). The result will be passed back
  * to the caller.
+ * Passwords are hashed and verified outside of any transaction: bcrypt takes
+ * tens of milliseconds on purpose, and a transaction would hold its pooled
+ * connection for all that time. createUser and loginUser therefore run their
+ * transactions explicitly, around the database work only.
  */
 @Service
-@Transactional
 public class UserService {
 
   private final Logger log = LoggerFactory.getLogger(UserService.class);
 
   private final UserRepository userRepository;
 
+  private final UserStreamRepository userStreamRepository;
+
+  private final UserTokenCache tokenCache;
+
+  private final PasswordHasher passwordHasher;
+
+  private final SignedTokens signedTokens;
+
+  private final PresenceRegistry presenceRegistry;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final TransactionTemplate transactionTemplate;
+
   @Autowired
-  public UserService(@Qualifier("userRepository") UserRepository userRepository) {
+  public UserService(@Qualifier("userRepository") UserRepository userRepository,
+                     @Qualifier("userStreamRepository") UserStreamRepository userStreamRepository,
+                     UserTokenCache tokenCache,
+                     PasswordHasher passwordHasher,
+                     SignedTokens signedTokens,
+                     PresenceRegistry presenceRegistry,
+                     ApplicationEventPublisher eventPublisher,
+                     PlatformTransactionManager transactionManager) {
     this.userRepository = userRepository;
+    this.userStreamRepository = userStreamRepository;
+    this.tokenCache = tokenCache;
+    this.passwordHasher = passwordHasher;
+    this.signedTokens = signedTokens;
+    this.presenceRegistry = presenceRegistry;
+    this.eventPublisher = eventPublisher;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Returns at most {@code limit} users with an id greater than {@code after},
+   * ordered by id. Passing the id of the last user of a page as {@code after}
+   * yields the next page.
+   * The users are read-only projections; the read-only transaction makes
+   * Hibernate skip flushing (FlushMode.MANUAL) and the JDBC connection is
+   * flagged read-only.
+   */
+  @Transactional(readOnly = true)
+  public List<UserSummary> getUsers(Long after, int limit) {
+    long lastSeenId = after == null ? 0L : after;
+    return this.userRepository.findSummariesAfter(lastSeenId, PageRequest.of(0, limit));
+  }
+
+  /**
+   * Hands every user, ordered by id, to the given consumer without
+   * materializing the whole list.
+   * Read from the primary, like {@link #getUsersByIds}: the user list cache
+   * reads all users again after many changes, e.g. a batch import, which a
+   * replica may not have seen yet.
+   */
+  @Transactional
+  public void streamUsers(Consumer<User> consumer) {
+    this.userStreamRepository.forEachUser(consumer);
   }
 
-  public List<User> getUsers() {
-    return this.userRepository.findAll();
+  /**
+   * Returns the users with the given ids in no particular order. Ids without
+   * a user are skipped.
+   * Read from the primary, not from a replica: the callers reload users right
+   * after a change was committed, which a replica may not have seen yet.
+   */
+  @Transactional
+  public List<User> getUsersByIds(Collection<Long> userIds) {
+    return userRepository.findAllById(userIds);
   }
 
+  @Transactional(readOnly = true)
   public User getUserById(Long userId) {
     return userRepository.findById(userId)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, 
-                    "User with ID " + userId + " was not found"));
+            .orElseThrow(() -> UserNotFoundException.byId(userId));
   }
 
   public User createUser(User newUser) {
     if (newUser.getUsername() == null || newUser.getUsername().isEmpty() ||
         newUser.getPassword() == null || newUser.getPassword().isEmpty()) {
-      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
-              "Username and password cannot be empty");
+      throw new InvalidUserException();
     }
-    newUser.setToken(UUID.randomUUID().toString());
-    newUser.setStatus(UserStatus.ONLINE);
-    newUser.setCreationDate(new Date());
+    initializeNewUser(newUser);
+    newUser.setPassword(passwordHasher.hash(newUser.getPassword()));
 
-    checkIfUserExists(newUser);
-    // saves the given entity but data is only persisted in the database once
-    // flush() is called
-    User savedUser = userRepository.save(newUser);
-    userRepository.flush();
+    User savedUser = transactionTemplate.execute(status -> {
+      // saves the given entity but data is only persisted in the database once
+      // flush() is called. A taken username fails the flush with a violation of
+      // the unique constraint, which is answered with 409
+      User user = userRepository.save(newUser);
+      userRepository.flush();
+      tokenCache.put(user);
+      eventPublisher.publishEvent(UserEvent.created(user, UserStatus.ONLINE));
+      // the STATUS_CHANGED event of the first heartbeat is delivered right
+      // away, it must not announce a user that is not committed yet
+      TransactionCallbacks.afterCommit(() -> presenceRegistry.touch(user.getId()));
+      return user;
+    });
 
     log.debug("Created Information for User: {}", savedUser);
     return savedUser;
   }
 
   public User loginUser(User userInput) {
-    User userByUsername = userRepository.findByUsername(userInput.getUsername());
+    // read from the primary: a replica may not have a user that registered
+    // just now; the password is checked after the transaction
+    User userByUsername = transactionTemplate.execute(
+        status -> userRepository.findByUsername(userInput.getUsername()));
 
     if (userByUsername == null) {
-      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User with username " + 
-              userInput.getUsername() + " was not found");
+      throw UserNotFoundException.byUsername(userInput.getUsername());
     }
     
-    if (!userByUsername.getPassword().equals(userInput.getPassword())) {
-      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Wrong password");
+    if (!passwordHasher.matches(userInput.getPassword(), userByUsername.getPassword())) {
+      throw InvalidCredentialsException.wrongPassword();
+    }
+    // the hash was made with a lower work factor than configured -> upgrade it
+    // now that the plaintext password is known
+    if (passwordHasher.needsRehash(userByUsername.getPassword())) {
+      String upgradedHash = passwordHasher.hash(userInput.getPassword());
+      Long userId = userByUsername.getId();
+      userByUsername = transactionTemplate.execute(status -> {
+        User user = getUserById(userId);
+        user.setPassword(upgradedHash);
+        return user;
+      });
     }
     
-    userByUsername.setStatus(UserStatus.ONLINE);
-    userByUsername = userRepository.save(userByUsername);
-    userRepository.flush();
+    // the status is derived from the presence registry and written behind in
+    // batches, a login does not update the user row
+    presenceRegistry.touch(userByUsername.getId());
+    tokenCache.put(userByUsername);
     
     return userByUsername;
   }
 
-  public User updateUser(Long userId, User userInput, String token) {
-    User user = getUserById(userId);
-    if (token !=null && token.startsWith("Bearer ")){
-      token = token.substring(7); 
+  /**
+   * Applies the changes of the given input to the user. The user is managed,
+   * so there is no explicit save: dirty checking writes the changed columns
+   * with a single UPDATE when the transaction commits, and the version column
+   * makes a concurrent modification fail instead of being overwritten. A
+   * rename to a taken username fails with a DataIntegrityViolationException.
+   * An actual change is announced with a PROFILE_UPDATED {@link UserEvent}.
+   */
+  @Transactional
+  public User updateUser(Long userId, User userInput, UserPrincipal principal) {
+    return updateUser(userId, userInput, principal, null);
+  }
+
+  /**
+   * Like {@link #updateUser(Long, User, UserPrincipal)}, but only if the user
+   * is still at the expected version (null accepts any version).
+   *
+   * @param principal the authenticated caller, see AuthenticationInterceptor
+   * @throws UserModifiedException if the user was modified in the meantime
+   */
+  @Transactional
+  public User updateUser(Long userId, User userInput, UserPrincipal principal, Long expectedVersion) {
+    // the interceptor already refused everyone else, this guards other callers
+    if (principal == null || !principal.getId().equals(userId)) {
+      throw new NotProfileOwnerException();
     }
-    System.out.println("Received token: " + token);
-    System.out.println("User's stored token: " + user.getToken());
 
-    if (user.getToken() == null || token == null || !user.getToken().equals(token)) {
-      throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You are not allowed to modify this profile");
+    presenceRegistry.touch(userId);
+
+    User user = getUserById(userId);
+    if (expectedVersion != null && !expectedVersion.equals(user.getVersion())) {
+      throw new UserModifiedException(userId);
     }
+
+    boolean changed = false;
+    boolean renamed = false;
     if (userInput.getUsername() != null && !userInput.getUsername().equals(user.getUsername())) {
-      User existingUser = userRepository.findByUsername(userInput.getUsername());
-      if (existingUser != null) {
-        throw new ResponseStatusException(HttpStatus.CONFLICT, 
-                "Username " + userInput.getUsername() + " is already taken");
-      }
       user.setUsername(userInput.getUsername());
+      changed = true;
+      renamed = true;
     }
 
-    if (userInput.getBirthday() != null) {
+    if (userInput.getBirthday() != null && !userInput.getBirthday().equals(user.getBirthday())) {
       user.setBirthday(userInput.getBirthday());
+      changed = true;
+    }
+
+    if (renamed) {
+      // the unique constraint decides whether the username is free, flushing
+      // now reports a taken one from here instead of from the commit
+      userRepository.flush();
+      // the cached principal still carries the old username
+      tokenCache.invalidate(user.getToken());
+    }
+
+    if (changed) {
+      eventPublisher.publishEvent(UserEvent.profileUpdated(user));
     }
-    
-    userRepository.save(user);
-    userRepository.flush(); 
 
-    return userRepository.findById(userId).orElseThrow(() ->
-    new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "User update failed"));
+    return user;
   }
 
   /**
-   * This is a helper method that will check the uniqueness criteria of the
-   * username and the name
-   * defined in the User entity. The method will do nothing if the input is unique
-   * and throw an error otherwise.
-   *
-   * @param userToBeCreated
-   * @throws org.springframework.web.server.ResponseStatusException
-   * @see User
+   * Ends the session of the given principal so that its token is not accepted
+   * again: a signed token is revoked until it expires, a random one is
+   * replaced by a new one that is not handed out.
    */
-  private void checkIfUserExists(User userToBeCreated) {
-    User userByUsername = userRepository.findByUsername(userToBeCreated.getUsername());
-
-
-    if (userByUsername != null) {
-      throw new ResponseStatusException(HttpStatus.CONFLICT, 
-              "Username " + userToBeCreated.getUsername() + " is already taken");
+  @Transactional
+  public void logoutUser(UserPrincipal principal) {
+    if (SignedTokens.isSignedToken(principal.getToken())) {
+      signedTokens.revoke(principal.getToken());
+      return;
     }
+    User user = getUserById(principal.getId());
+    tokenCache.invalidate(principal.getToken());
+    user.setToken(UUID.randomUUID().toString());
+  }
+
+  /**
+   * Sets the fields the server assigns to every new user: a fresh token, the
+   * initial status and the creation date.
+   *
+   * @param newUser user that is about to be persisted
+   */
+  static void initializeNewUser(User newUser) {
+    newUser.setToken(UUID.randomUUID().toString());
+    newUser.setStatus(UserStatus.ONLINE);
+    newUser.setCreationDate(new Date());
   }
 }
\ No newline at end of file
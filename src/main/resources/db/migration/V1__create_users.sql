@@ -0,0 +1,21 @@
+-- Users, as mapped by ch.uzh.ifi.hase.soprafs24.entity.User.
+-- Plain SQL that runs unchanged on H2 and PostgreSQL.
+
+-- the increment is the id allocation size (spring.jpa.properties.users.id.allocation-size)
+CREATE SEQUENCE user_sequence START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE users (
+  id            BIGINT       NOT NULL,
+  name          VARCHAR(255) NOT NULL,
+  username      VARCHAR(255) NOT NULL,
+  password      VARCHAR(255) NOT NULL,
+  token         VARCHAR(255) NOT NULL,
+  creation_date TIMESTAMP    NOT NULL,
+  birthday      TIMESTAMP,
+  -- ordinal of UserStatus
+  status        INTEGER      NOT NULL,
+  version       BIGINT,
+  CONSTRAINT pk_users PRIMARY KEY (id),
+  CONSTRAINT uk_users_username UNIQUE (username),
+  CONSTRAINT uk_users_token UNIQUE (token)
+);
@@ -0,0 +1,2 @@
+-- UserRepository.findByName, username and token are indexed by their unique constraints
+CREATE INDEX ix_users_name ON users (name);
@@ -0,0 +1,6 @@
+-- ids of signed tokens that were logged out before they expired, see RevokedTokenRepository
+CREATE TABLE revoked_tokens (
+  id BIGINT NOT NULL,
+  expires_at BIGINT NOT NULL,
+  CONSTRAINT pk_revoked_tokens PRIMARY KEY (id)
+);
@@ -0,0 +1,195 @@
+package ch.uzh.ifi.hase.soprafs24.benchmark;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.AppenderBase;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * LoggingLatencyBenchmark
+ * Sends GET /users/{id} from concurrent callers while every request logs a
+ * few DEBUG events, and reports p50/p99 latency for sinks of different speed
+ * behind an async appender configured like the one of logback-spring.xml, and
+ * for a slow sink written synchronously. Behind the async appender the
+ * latency should not depend on the sink: events that do not fit into the
+ * queue are dropped instead of making the request wait.
+ * Run with: ./gradlew benchmark
+ */
+@Tag("benchmark")
+@AutoConfigureMockMvc
+@SpringBootTest(properties = "logging.level.org.springframework.web.servlet.DispatcherServlet=DEBUG")
+public class LoggingLatencyBenchmark {
+
+  private static final int THREADS = 8;
+
+  private static final int REQUESTS_PER_THREAD = 1_000;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  private Long userId;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    User user = new User();
+    user.setName("name");
+    user.setUsername("username");
+    user.setPassword("password");
+    userId = userService.createUser(user).getId();
+  }
+
+  @Test
+  public void latencyBySinkSpeed() throws Exception {
+    Logger root = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+    AsyncAppender configured = (AsyncAppender) root.getAppender("ASYNC");
+    assertNotNull(configured, "logback-spring.xml defines the ASYNC appender");
+
+    System.out.printf("%-22s %10s %10s %12s%n", "sink", "p50 us", "p99 us", "events");
+    root.detachAppender(configured);
+    try {
+      run("async, instant", root, async(configured, new SlowAppender(0)));
+      run("async, 1 ms/event", root, async(configured, new SlowAppender(1)));
+      run("async, 50 ms/event", root, async(configured, new SlowAppender(50)));
+      run("sync, 1 ms/event", root, started(new SlowAppender(1)));
+    } finally {
+      root.addAppender(configured);
+    }
+  }
+
+  private void run(String name, Logger root, Appender<ILoggingEvent> appender) throws Exception {
+    SlowAppender sink = appender instanceof SlowAppender
+        ? (SlowAppender) appender
+        : (SlowAppender) ((AsyncAppender) appender).getAppender(SlowAppender.NAME);
+    // warm up the JIT without the appender
+    request(REQUESTS_PER_THREAD);
+
+    root.addAppender(appender);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<long[]>> futures = new ArrayList<>(THREADS);
+      for (int thread = 0; thread < THREADS; thread++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          return request(REQUESTS_PER_THREAD);
+        }));
+      }
+      start.countDown();
+
+      long[] all = new long[THREADS * REQUESTS_PER_THREAD];
+      int offset = 0;
+      for (Future<long[]> future : futures) {
+        long[] latencies = future.get();
+        System.arraycopy(latencies, 0, all, offset, latencies.length);
+        offset += latencies.length;
+      }
+      Arrays.sort(all);
+
+      System.out.printf("%-22s %10.1f %10.1f %12d%n", name, all[all.length / 2] / 1_000.0,
+          all[(int) (all.length * 0.99)] / 1_000.0, sink.written.sum());
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+      root.detachAppender(appender);
+      appender.stop();
+    }
+  }
+
+  private long[] request(int requests) throws Exception {
+    long[] latencies = new long[requests];
+    for (int i = 0; i < requests; i++) {
+      long start = System.nanoTime();
+      mockMvc.perform(get("/users/" + userId)).andExpect(status().isOk());
+      latencies[i] = System.nanoTime() - start;
+    }
+    return latencies;
+  }
+
+  /**
+   * An async appender with the queue settings of the configured one in front
+   * of the given sink.
+   */
+  private static AsyncAppender async(AsyncAppender configured, SlowAppender sink) {
+    AsyncAppender async = new AsyncAppender();
+    async.setContext(configured.getContext());
+    async.setQueueSize(configured.getQueueSize());
+    async.setDiscardingThreshold(configured.getDiscardingThreshold());
+    async.setNeverBlock(configured.isNeverBlock());
+    // events still queued when the run ends are not waited for
+    async.setMaxFlushTime(100);
+    async.addAppender(started(sink));
+    async.start();
+    return async;
+  }
+
+  private static SlowAppender started(SlowAppender sink) {
+    sink.setContext(((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).getLoggerContext());
+    sink.start();
+    return sink;
+  }
+
+  /**
+   * Stands in for stdout, a file or a log shipper that takes the given time
+   * per event.
+   */
+  private static final class SlowAppender extends AppenderBase<ILoggingEvent> {
+
+    private static final String NAME = "slow";
+
+    private final long delayMillis;
+
+    private final LongAdder written = new LongAdder();
+
+    private SlowAppender(long delayMillis) {
+      this.delayMillis = delayMillis;
+      setName(NAME);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      if (delayMillis > 0) {
+        try {
+          Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      written.increment();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package ch.uzh.ifi.hase.soprafs24.benchmark;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoginLoadBenchmark
+ * Drives loginUser from more concurrent callers than there are hashing
+ * threads and reports throughput, p50/p99 latency and the number of logins
+ * shed with 429 for increasing concurrency. Throughput should plateau at the
+ * hashing pool's capacity while p99 stays bounded by the queue.
+ * Run with: ./gradlew benchmark
+ */
+@Tag("benchmark")
+@WebAppConfiguration
+@SpringBootTest
+public class LoginLoadBenchmark {
+
+  private static final int[] CONCURRENCY = { 4, 16, 64 };
+
+  private static final int LOGINS_PER_CALLER = 50;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private PasswordHasher passwordHasher;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    User user = new User();
+    user.setName("name");
+    user.setUsername("username");
+    user.setPassword("password");
+    userService.createUser(user);
+  }
+
+  @Test
+  public void loginUnderLoad() throws Exception {
+    System.out.printf("%8s %12s %10s %10s %10s%n", "callers", "logins/s", "p50 ms", "p99 ms", "shed");
+    for (int callers : CONCURRENCY) {
+      run(callers);
+    }
+  }
+
+  private void run(int callers) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicLong shed = new AtomicLong();
+    try {
+      List<Future<long[]>> futures = new ArrayList<>(callers);
+      for (int caller = 0; caller < callers; caller++) {
+        futures.add(executor.submit(() -> {
+          long[] latencies = new long[LOGINS_PER_CALLER];
+          start.await();
+          for (int i = 0; i < LOGINS_PER_CALLER; i++) {
+            User login = new User();
+            login.setUsername("username");
+            login.setPassword("password");
+            long begin = System.nanoTime();
+            try {
+              userService.loginUser(login);
+            } catch (TooManyRequestsException e) {
+              shed.incrementAndGet();
+            }
+            latencies[i] = System.nanoTime() - begin;
+          }
+          return latencies;
+        }));
+      }
+
+      long begin = System.nanoTime();
+      start.countDown();
+      long[] all = new long[callers * LOGINS_PER_CALLER];
+      int offset = 0;
+      for (Future<long[]> future : futures) {
+        long[] latencies = future.get();
+        System.arraycopy(latencies, 0, all, offset, latencies.length);
+        offset += latencies.length;
+      }
+      double seconds = (System.nanoTime() - begin) / 1_000_000_000.0;
+      Arrays.sort(all);
+
+      System.out.printf("%8d %12.1f %10.1f %10.1f %10d   (queue depth now %d)%n", callers,
+          (all.length - shed.get()) / seconds, all[all.length / 2] / 1_000_000.0,
+          all[(int) (all.length * 0.99)] / 1_000_000.0, shed.get(), passwordHasher.queueDepth());
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+}
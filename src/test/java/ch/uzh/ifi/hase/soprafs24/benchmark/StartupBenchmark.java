@@ -0,0 +1,107 @@
+package ch.uzh.ifi.hase.soprafs24.benchmark;
+
+import ch.uzh.ifi.hase.soprafs24.Application;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchIndex;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * StartupBenchmark
+ * Fills a file-backed H2 database (h2file profile) with 100k users and then
+ * restarts the server on it a few times. Reports the time until the context
+ * is ready (migrations, schema validation, search index load, presence reset)
+ * and the time until the first GET /users/{id} is answered.
+ * Run with: ./gradlew benchmark --tests '*StartupBenchmark*'
+ */
+@Tag("benchmark")
+public class StartupBenchmark {
+
+  private static final int USERS = 100_000;
+
+  private static final int INSERT_BATCH = 1_000;
+
+  private static final int RUNS = 3;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void timeToFirstRequest() throws Exception {
+    String databaseFile = directory.resolve("users").toString();
+    seed(databaseFile);
+
+    HttpClient client = HttpClient.newHttpClient();
+    System.out.printf("%-6s %8s %14s %18s %10s%n", "run", "users", "ready ms", "first request ms", "indexed");
+    for (int run = 1; run <= RUNS; run++) {
+      long start = System.nanoTime();
+      try (ConfigurableApplicationContext context = start(databaseFile, WebApplicationType.SERVLET)) {
+        long ready = System.nanoTime();
+        String port = context.getEnvironment().getProperty("local.server.port");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/users/" + USERS))
+            .build();
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        long firstResponse = System.nanoTime();
+
+        assertEquals(200, response.statusCode());
+        System.out.printf("%-6d %8d %14.0f %18.0f %10d%n", run, USERS, (ready - start) / 1_000_000.0,
+            (firstResponse - start) / 1_000_000.0, context.getBean(UserSearchIndex.class).size());
+      }
+    }
+  }
+
+  private static void seed(String databaseFile) {
+    // a single hash for everybody, hashing 100k passwords would take minutes
+    String password = new BCryptPasswordEncoder(4).encode("password");
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    try (ConfigurableApplicationContext context = start(databaseFile, WebApplicationType.NONE)) {
+      JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+      List<Object[]> rows = new ArrayList<>(INSERT_BATCH);
+      for (long id = 1; id <= USERS; id++) {
+        rows.add(new Object[] { id, "name " + id, "user" + id, password, UUID.randomUUID().toString(), now,
+            UserStatus.OFFLINE.ordinal() });
+        if (rows.size() == INSERT_BATCH) {
+          insert(jdbcTemplate, rows);
+          rows.clear();
+        }
+      }
+      insert(jdbcTemplate, rows);
+      // ids handed out by the server must not collide with the seeded ones
+      jdbcTemplate.execute("ALTER SEQUENCE user_sequence RESTART WITH " + (USERS + 1_000));
+    }
+  }
+
+  private static void insert(JdbcTemplate jdbcTemplate, List<Object[]> rows) {
+    jdbcTemplate.batchUpdate("INSERT INTO users (id, name, username, password, token, creation_date, status, version)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?, 0)", rows);
+  }
+
+  private static ConfigurableApplicationContext start(String databaseFile, WebApplicationType webApplicationType) {
+    return new SpringApplicationBuilder(Application.class)
+        .web(webApplicationType)
+        .run("--spring.profiles.active=h2file",
+            "--users.datasource.h2-file=" + databaseFile,
+            "--server.port=0",
+            "--spring.main.banner-mode=off",
+            "--logging.level.root=WARN");
+  }
+}
@@ -0,0 +1,142 @@
+package ch.uzh.ifi.hase.soprafs24.benchmark;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.UserBatchService;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserInsertBenchmark
+ * Measures inserts per second and JDBC statements for bulk and concurrent user
+ * creation. The nested classes run the same workload once with an allocation
+ * size of 1 (one sequence call per insert, the former behaviour) and once with
+ * the pooled allocation size. The unpooled run gets its own database with a
+ * Hibernate generated schema, since the migrated sequence increments by the
+ * pooled allocation size. The bcrypt strength is lowered to the minimum so
+ * that hashing does not dominate the measurement.
+ * Run with: ./gradlew benchmark
+ */
+public abstract class UserInsertBenchmark {
+
+  private static final int BULK_USERS = 20_000;
+
+  private static final int THREADS = 8;
+
+  private static final int USERS_PER_THREAD = 1_000;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserBatchService userBatchService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+
+  @Tag("benchmark")
+  @WebAppConfiguration
+  @SpringBootTest(properties = {
+      "spring.jpa.properties.users.id.allocation-size=1",
+      "spring.datasource.url=jdbc:h2:mem:without-pooling",
+      "spring.flyway.enabled=false",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.jpa.properties.hibernate.generate_statistics=true",
+      "users.password.bcrypt-strength=4" })
+  public static class WithoutPooling extends UserInsertBenchmark {
+  }
+
+  @Tag("benchmark")
+  @WebAppConfiguration
+  @SpringBootTest(properties = {
+      "spring.jpa.properties.users.id.allocation-size=50",
+      "spring.jpa.properties.hibernate.generate_statistics=true",
+      "users.password.bcrypt-strength=4" })
+  public static class WithPooling extends UserInsertBenchmark {
+  }
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @Test
+  public void bulkInsert() {
+    List<User> newUsers = new ArrayList<>(BULK_USERS);
+    for (int i = 0; i < BULK_USERS; i++) {
+      newUsers.add(newUser("bulk" + i));
+    }
+
+    statistics.clear();
+    long start = System.nanoTime();
+    userBatchService.createUsers(newUsers);
+    long elapsed = System.nanoTime() - start;
+
+    report("bulk insert", BULK_USERS, elapsed);
+  }
+
+  @Test
+  public void concurrentCreateUser() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      statistics.clear();
+      long start = System.nanoTime();
+      List<Future<?>> futures = new ArrayList<>(THREADS);
+      for (int thread = 0; thread < THREADS; thread++) {
+        int threadId = thread;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < USERS_PER_THREAD; i++) {
+            userService.createUser(newUser("concurrent" + threadId + "-" + i));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      long elapsed = System.nanoTime() - start;
+
+      report("concurrent createUser", THREADS * USERS_PER_THREAD, elapsed);
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  private void report(String workload, int users, long elapsedNanos) {
+    double seconds = elapsedNanos / 1_000_000_000.0;
+    System.out.printf("%-14s %-22s %8d users %10.0f inserts/s %8d statements%n",
+        getClass().getSimpleName(), workload, users, users / seconds,
+        statistics.getPrepareStatementCount());
+  }
+
+  private static User newUser(String username) {
+    User user = new User();
+    user.setName("name of " + username);
+    user.setUsername(username);
+    user.setPassword("password");
+    return user;
+  }
+}
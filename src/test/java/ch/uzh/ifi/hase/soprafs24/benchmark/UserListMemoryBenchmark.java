@@ -0,0 +1,149 @@
+package ch.uzh.ifi.hase.soprafs24.benchmark;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.DTOMapper;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserListMemoryBenchmark
+ * Compares the peak heap needed to serialize the full user list when it is
+ * materialized (findAll + DTO list, the former GET /users) with the streamed
+ * JDBC cursor path. The streamed peak should stay flat as the user count grows.
+ * Run with: ./gradlew benchmark
+ */
+@Tag("benchmark")
+@WebAppConfiguration
+@SpringBootTest
+public class UserListMemoryBenchmark {
+
+  private static final int[] USER_COUNTS = { 10_000, 20_000, 40_000, 80_000 };
+
+  private static final int SEED_CHUNK_SIZE = 1_000;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Test
+  public void materializedVersusStreamedUserList() throws Exception {
+    userRepository.deleteAll();
+
+    System.out.printf("%10s %25s %20s%n", "users", "materialized peak (MB)", "streamed peak (MB)");
+    int seeded = 0;
+    for (int userCount : USER_COUNTS) {
+      seedUsers(seeded, userCount);
+      seeded = userCount;
+
+      long materialized = peakHeapDuring(this::writeMaterialized);
+      long streamed = peakHeapDuring(this::writeStreamed);
+      System.out.printf("%10d %25.1f %20.1f%n", userCount, toMegabytes(materialized), toMegabytes(streamed));
+    }
+  }
+
+  private void writeMaterialized() {
+    List<UserGetDTO> userGetDTOs = new ArrayList<>();
+    for (User user : userRepository.findAll()) {
+      userGetDTOs.add(DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+    }
+    try {
+      objectMapper.writeValue(OutputStream.nullOutputStream(), userGetDTOs);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void writeStreamed() {
+    try {
+      JsonGenerator generator = objectMapper.getFactory().createGenerator(OutputStream.nullOutputStream());
+      generator.writeStartArray();
+      userService.streamUsers(user -> {
+        try {
+          objectMapper.writeValue(generator, DTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      generator.writeEndArray();
+      generator.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void seedUsers(int from, int to) {
+    List<User> chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+    for (int i = from; i < to; i++) {
+      User user = new User();
+      user.setName("name" + i);
+      user.setUsername("username" + i);
+      user.setPassword("password");
+      user.setToken("token-" + i);
+      user.setStatus(UserStatus.OFFLINE);
+      user.setCreationDate(new Date());
+      chunk.add(user);
+      if (chunk.size() == SEED_CHUNK_SIZE) {
+        userRepository.saveAll(chunk);
+        chunk = new ArrayList<>(SEED_CHUNK_SIZE);
+      }
+    }
+    userRepository.saveAll(chunk);
+  }
+
+  /**
+   * Runs the given task while a sampler thread records the highest heap usage
+   * above the level measured right before the task started.
+   */
+  private static long peakHeapDuring(Runnable task) throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    long baseline = runtime.totalMemory() - runtime.freeMemory();
+
+    AtomicLong peak = new AtomicLong(baseline);
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread sampler = new Thread(() -> {
+      while (running.get()) {
+        peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+        Thread.onSpinWait();
+      }
+    }, "heap-sampler");
+    sampler.setDaemon(true);
+    sampler.start();
+    try {
+      task.run();
+    } finally {
+      running.set(false);
+      sampler.join();
+    }
+    return Math.max(0L, peak.get() - baseline);
+  }
+
+  private static double toMegabytes(long bytes) {
+    return bytes / (1024.0 * 1024.0);
+  }
+}
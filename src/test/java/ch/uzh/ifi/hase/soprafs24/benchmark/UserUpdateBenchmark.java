@@ -0,0 +1,144 @@
+package ch.uzh.ifi.hase.soprafs24.benchmark;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserUpdateBenchmark
+ * Runs concurrent profile updates (one user per thread) and reports JDBC
+ * statements per update and latency percentiles, once for the former update
+ * path (save, flush, reload and two stdout lines) and once for the current
+ * dirty-checking path of UserService.updateUser.
+ * Run with: ./gradlew benchmark
+ */
+@Tag("benchmark")
+@WebAppConfiguration
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class UserUpdateBenchmark {
+
+  private static final int THREADS = 8;
+
+  private static final int UPDATES_PER_THREAD = 1_000;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private Statistics statistics;
+
+  private List<User> users;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    users = new ArrayList<>(THREADS);
+    for (int i = 0; i < THREADS; i++) {
+      User user = new User();
+      user.setName("name" + i);
+      user.setUsername("username" + i);
+      user.setPassword("password");
+      users.add(userService.createUser(user));
+    }
+  }
+
+  @Test
+  public void legacyUpdatePath() throws Exception {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    run("save+flush+reload", user -> transaction.executeWithoutResult(status -> {
+      User managed = userRepository.findById(user.getId()).orElseThrow();
+      System.out.println("Received token: " + user.getToken());
+      System.out.println("User's stored token: " + managed.getToken());
+      managed.setBirthday(new Date());
+      userRepository.save(managed);
+      userRepository.flush();
+      userRepository.findById(user.getId()).orElseThrow();
+    }));
+  }
+
+  @Test
+  public void dirtyCheckingUpdatePath() throws Exception {
+    run("dirty checking", user -> {
+      User userInput = new User();
+      userInput.setBirthday(new Date());
+      userService.updateUser(user.getId(), userInput, UserPrincipal.of(user));
+    });
+  }
+
+  private interface Update {
+    void apply(User user);
+  }
+
+  private void run(String name, Update update) throws Exception {
+    // warm up the token cache and the JIT
+    for (User user : users) {
+      update.apply(user);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      statistics.clear();
+      List<Future<long[]>> futures = new ArrayList<>(THREADS);
+      for (User user : users) {
+        futures.add(executor.submit(() -> {
+          long[] latencies = new long[UPDATES_PER_THREAD];
+          for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+            long start = System.nanoTime();
+            update.apply(user);
+            latencies[i] = System.nanoTime() - start;
+          }
+          return latencies;
+        }));
+      }
+
+      long[] all = new long[THREADS * UPDATES_PER_THREAD];
+      int offset = 0;
+      for (Future<long[]> future : futures) {
+        long[] latencies = future.get();
+        System.arraycopy(latencies, 0, all, offset, latencies.length);
+        offset += latencies.length;
+      }
+      Arrays.sort(all);
+
+      System.out.printf("%-18s %6.2f statements/update  p50 %7.1f us  p99 %7.1f us%n", name,
+          statistics.getPrepareStatementCount() / (double) all.length,
+          all[all.length / 2] / 1_000.0, all[(int) (all.length * 0.99)] / 1_000.0);
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+}
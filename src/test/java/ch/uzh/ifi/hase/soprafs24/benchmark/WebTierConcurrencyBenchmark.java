@@ -0,0 +1,124 @@
+package ch.uzh.ifi.hase.soprafs24.benchmark;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebTierConcurrencyBenchmark
+ * Starts the server on a random port, once with Tomcat's platform thread pool
+ * and once with virtual threads, and keeps a fixed number of GET /users/{id}
+ * requests in flight. Reports throughput, live threads and heap growth per
+ * concurrent connection for every concurrency level.
+ * The virtual thread variant is skipped unless the JVM is Java 21+.
+ * Run with: ./gradlew benchmark -PruntimeJavaVersion=21 --tests '*WebTierConcurrencyBenchmark*'
+ */
+public abstract class WebTierConcurrencyBenchmark {
+
+  private static final int[] CONCURRENCY = { 50, 200, 1_000 };
+
+  private static final int REQUESTS_PER_LEVEL = 20_000;
+
+  @LocalServerPort
+  private int port;
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  private Long userId;
+
+  @Tag("benchmark")
+  @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+      properties = "spring.threads.virtual.enabled=false")
+  public static class PlatformThreads extends WebTierConcurrencyBenchmark {
+  }
+
+  @Tag("benchmark")
+  @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+      properties = "spring.threads.virtual.enabled=true")
+  public static class VirtualThreads extends WebTierConcurrencyBenchmark {
+
+    @BeforeAll
+    public static void requireVirtualThreads() {
+      Assumptions.assumeTrue(Runtime.version().feature() >= 21, "virtual threads need Java 21+");
+    }
+  }
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    User user = new User();
+    user.setName("name");
+    user.setUsername("username");
+    user.setPassword("password");
+    userId = userService.createUser(user).getId();
+  }
+
+  @Test
+  public void concurrentReads() throws Exception {
+    HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    URI uri = URI.create("http://localhost:" + port + "/users/" + userId);
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    Runtime runtime = Runtime.getRuntime();
+
+    System.out.printf("%-16s %8s %12s %10s %16s %8s%n", getClass().getSimpleName(), "conns", "requests/s",
+        "threads", "heap KB / conn", "errors");
+    for (int connections : CONCURRENCY) {
+      System.gc();
+      long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+      AtomicLong peakHeap = new AtomicLong(heapBefore);
+      AtomicInteger peakThreads = new AtomicInteger(threads.getThreadCount());
+      AtomicInteger errors = new AtomicInteger();
+      Semaphore inFlight = new Semaphore(connections);
+      List<CompletableFuture<Void>> responses = new ArrayList<>(REQUESTS_PER_LEVEL);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < REQUESTS_PER_LEVEL; i++) {
+        inFlight.acquire();
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .handle((response, failure) -> {
+              if (failure != null || response.statusCode() != 200) {
+                errors.incrementAndGet();
+              }
+              peakHeap.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+              peakThreads.accumulateAndGet(threads.getThreadCount(), Math::max);
+              inFlight.release();
+              return null;
+            }));
+      }
+      CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).join();
+      double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+      System.out.printf("%-16s %8d %12.0f %10d %16.1f %8d%n", "", connections, REQUESTS_PER_LEVEL / seconds,
+          peakThreads.get(), (peakHeap.get() - heapBefore) / 1024.0 / connections, errors.get());
+    }
+  }
+}
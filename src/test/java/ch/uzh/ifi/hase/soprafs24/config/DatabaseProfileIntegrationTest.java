@@ -0,0 +1,111 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * DatabaseProfileIntegrationTest
+ * Boots the application with the durable database profiles: the migrations
+ * have to create a schema that Hibernate accepts, and the pool has to be
+ * sized by the profile. The postgres profile runs against H2 in PostgreSQL
+ * compatibility mode as a stand-in for a real server.
+ */
+public abstract class DatabaseProfileIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @WebAppConfiguration
+  @ActiveProfiles("postgres")
+  @SpringBootTest(properties = {
+      "spring.datasource.url=jdbc:h2:mem:postgres;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE",
+      "spring.datasource.driver-class-name=org.h2.Driver",
+      "spring.datasource.username=sa",
+      "spring.datasource.password=",
+      "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect" })
+  public static class PostgresStandIn extends DatabaseProfileIntegrationTest {
+
+    @Override
+    int expectedPoolSize() {
+      return 5;
+    }
+  }
+
+  @WebAppConfiguration
+  @ActiveProfiles("h2file")
+  @SpringBootTest
+  public static class H2File extends DatabaseProfileIntegrationTest {
+
+    @DynamicPropertySource
+    static void databaseFile(DynamicPropertyRegistry registry) throws IOException {
+      String file = Files.createTempDirectory("soprafs-h2file").resolve("users").toString();
+      registry.add("users.datasource.h2-file", () -> file);
+    }
+
+    @Override
+    int expectedPoolSize() {
+      return 4;
+    }
+  }
+
+  abstract int expectedPoolSize();
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+  }
+
+  @Test
+  public void migratedSchema_createAndReadUser_success() {
+    // given
+    User testUser = new User();
+    testUser.setName("testName");
+    testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
+
+    // when
+    User createdUser = userService.createUser(testUser);
+    List<User> streamed = new ArrayList<>();
+    userService.streamUsers(streamed::add);
+
+    // then
+    assertEquals("testUsername", userService.getUserById(createdUser.getId()).getUsername());
+    assertEquals(1, streamed.size());
+    assertEquals(createdUser.getId(), streamed.get(0).getId());
+  }
+
+  @Test
+  public void pool_sizedByProfile() throws SQLException {
+    HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+
+    assertEquals(expectedPoolSize(), pool.getMaximumPoolSize());
+    assertEquals(expectedPoolSize(), pool.getMinimumIdle());
+  }
+}
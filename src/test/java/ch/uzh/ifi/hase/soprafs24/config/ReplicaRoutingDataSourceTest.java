@@ -0,0 +1,92 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ReplicaRoutingDataSourceTest
+ * Routes transactions between two in-memory H2 databases, the primary and a
+ * replica, which can be told apart by the content of a marker table.
+ */
+public class ReplicaRoutingDataSourceTest {
+
+  private DataSource primary;
+
+  private DataSource replica;
+
+  @BeforeEach
+  public void setup() {
+    primary = database("primary");
+    replica = database("replica");
+  }
+
+  @Test
+  public void readOnlyTransaction_routedToReplica() {
+    // given
+    ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary,
+        Collections.singletonList(replica), null, Duration.ofSeconds(5));
+
+    // when/then
+    assertEquals("replica", readMarker(routingDataSource, true));
+    assertEquals("primary", readMarker(routingDataSource, false));
+  }
+
+  @Test
+  public void laggingReplica_readsFallBackToPrimary() {
+    // given -> the lag query reports 10 s, 5 s are tolerated
+    ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary,
+        Collections.singletonList(replica), "SELECT 10", Duration.ofSeconds(5));
+
+    // when
+    routingDataSource.checkReplicas();
+
+    // then
+    assertTrue(routingDataSource.eligibleReplicas().isEmpty());
+    assertEquals("primary", readMarker(routingDataSource, true));
+  }
+
+  @Test
+  public void replicaWithinLag_staysEligible() {
+    // given
+    ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary,
+        Collections.singletonList(replica), "SELECT 1", Duration.ofSeconds(5));
+
+    // when
+    routingDataSource.checkReplicas();
+
+    // then
+    assertEquals(List.of("replica-0"), routingDataSource.eligibleReplicas());
+    assertEquals("replica", readMarker(routingDataSource, true));
+  }
+
+  private static String readMarker(ReplicaRoutingDataSource routingDataSource, boolean readOnly) {
+    DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+    TransactionTemplate transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    transaction.setReadOnly(readOnly);
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    return transaction.execute(status -> jdbcTemplate.queryForObject("SELECT name FROM marker", String.class));
+  }
+
+  private static DataSource database(String name) {
+    DriverManagerDataSource dataSource = new DriverManagerDataSource(
+        "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    jdbcTemplate.execute("CREATE TABLE marker (name VARCHAR(20))");
+    jdbcTemplate.update("INSERT INTO marker VALUES (?)", name);
+    return dataSource;
+  }
+}
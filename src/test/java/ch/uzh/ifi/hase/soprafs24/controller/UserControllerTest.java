@@ -1,27 +1,63 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import ch.uzh.ifi.hase.soprafs24.config.BinaryFormatConfiguration;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.metrics.SqlStatementHeaderAdvice;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPutDTO;
+import ch.uzh.ifi.hase.soprafs24.security.LoginRateLimiter;
+import ch.uzh.ifi.hase.soprafs24.security.SignedTokens;
+import ch.uzh.ifi.hase.soprafs24.security.TokenAuthenticator;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.constant.BatchItemStatus;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.logging.ExceptionLogSampler;
+import ch.uzh.ifi.hase.soprafs24.logging.RequestIdFilter;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceRegistry;
+import ch.uzh.ifi.hase.soprafs24.service.UserBatchResult;
+import ch.uzh.ifi.hase.soprafs24.service.UserBatchService;
+import ch.uzh.ifi.hase.soprafs24.service.UserEventBroadcaster;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchHit;
+import ch.uzh.ifi.hase.soprafs24.service.UserSearchIndex;
 import ch.uzh.ifi.hase.soprafs24.service.UserService;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.hasLength;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -32,13 +68,17 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
@@ -51,27 +91,117 @@ import java.util.Date;
  * This tests if the UserController works.
  */
 @WebMvcTest(UserController.class)
+@TestPropertySource(properties = "users.sql.statement-header.enabled=true")
+@Import({ BinaryFormatConfiguration.class, ExceptionLogSampler.class, UserListCache.class })
 public class UserControllerTest {
 
   @Autowired
   private MockMvc mockMvc;
 
+  @Autowired
+  private UserListCache userListCache;
+
   @MockBean
   private UserService userService;
 
+  @MockBean
+  private UserBatchService userBatchService;
+
+  @MockBean
+  private PresenceRegistry presenceRegistry;
+
+  @MockBean
+  private UserEventBroadcaster userEventBroadcaster;
+
+  @MockBean
+  private UserSearchIndex userSearchIndex;
+
+  @MockBean
+  private LoginRateLimiter loginRateLimiter;
+
+  @MockBean
+  private SignedTokens signedTokens;
+
+  @MockBean
+  private TokenAuthenticator tokenAuthenticator;
+
+  private static final UserPrincipal TEST_PRINCIPAL = new UserPrincipal(1L, "testUsername", "test-token");
+
+  @BeforeEach
+  public void setup() {
+    // the cache is part of the shared context, every test brings its own users
+    userListCache.invalidateAll();
+  }
+
+  @Test
+  public void searchUsers_returnsHitsWithStatus() throws Exception {
+    // given
+    UserSearchHit hit = Mockito.mock(UserSearchHit.class);
+    given(hit.getId()).willReturn(1L);
+    given(hit.getUsername()).willReturn("firstname@lastname");
+    given(hit.getName()).willReturn("Firstname Lastname");
+    given(userSearchIndex.search("first", 5)).willReturn(Collections.singletonList(hit));
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.ONLINE);
+
+    // when/then
+    mockMvc.perform(get("/users/search").param("q", "first").param("limit", "5"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(1)))
+        .andExpect(jsonPath("$[0].username", is("firstname@lastname")))
+        .andExpect(jsonPath("$[0].status", is("ONLINE")))
+        .andExpect(jsonPath("$[0].token").doesNotExist());
+  }
+
+  @Test
+  public void getUser_reportsSqlStatementCount() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setName("Firstname Lastname");
+    user.setUsername("firstname@lastname");
+    user.setVersion(0L);
+    given(userService.getUserById(1L)).willReturn(user);
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.ONLINE);
+
+    // when/then -> the service is mocked, so the request issued no statement
+    mockMvc.perform(get("/users/1"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(SqlStatementHeaderAdvice.STATEMENT_COUNT_HEADER, "0"));
+  }
+
+  @Test
+  public void streamUserEvents_withLastEventId_resumesFromIt() throws Exception {
+    // given
+    given(userEventBroadcaster.subscribe(42L)).willReturn(new SseEmitter());
+
+    // when
+    MockHttpServletRequestBuilder getRequest = get("/users/events")
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .header("Last-Event-ID", "42");
+
+    // then
+    mockMvc.perform(getRequest).andExpect(request().asyncStarted());
+    verify(userEventBroadcaster).subscribe(42L);
+  }
+
   @Test
   public void givenUsers_whenGetUsers_thenReturnJsonArray() throws Exception {
     // given
     User user = new User();
+    user.setId(1L);
     user.setName("Firstname Lastname");
     user.setUsername("firstname@lastname");
     user.setStatus(UserStatus.OFFLINE);
-
-    List<User> allUsers = Collections.singletonList(user);
+    given(presenceRegistry.statusOf(any())).willReturn(UserStatus.OFFLINE);
 
     // this mocks the UserService -> we define above what the userService should
-    // return when getUsers() is called
-    given(userService.getUsers()).willReturn(allUsers);
+    // stream when streamUsers() is called
+    doAnswer(invocation -> {
+      Consumer<User> consumer = invocation.getArgument(0);
+      consumer.accept(user);
+      return null;
+    }).when(userService).streamUsers(any());
 
     // when
     MockHttpServletRequestBuilder getRequest = get("/users").contentType(MediaType.APPLICATION_JSON);
@@ -84,6 +214,71 @@ public class UserControllerTest {
         .andExpect(jsonPath("$[0].status", is(user.getStatus().toString())));
   }
 
+  @Test
+  public void givenUsers_whenGetUsersWithGzip_thenReturnCompressedCachedList() throws Exception {
+    // given -> enough users for the list to exceed the compression minimum
+    given(presenceRegistry.statusOf(any())).willReturn(UserStatus.OFFLINE);
+    doAnswer(invocation -> {
+      Consumer<User> consumer = invocation.getArgument(0);
+      for (long id = 1; id <= 50; id++) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("username" + id);
+        consumer.accept(user);
+      }
+      return null;
+    }).when(userService).streamUsers(any());
+
+    // when
+    MvcResult result = mockMvc.perform(get("/users").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andReturn();
+    mockMvc.perform(get("/users"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+        .andExpect(jsonPath("$", hasSize(50)));
+
+    // then -> both responses were served from one read of the users
+    byte[] gzipped = result.getResponse().getContentAsByteArray();
+    try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      assertEquals(50, new ObjectMapper().readTree(body).size());
+    }
+    verify(userService, times(1)).streamUsers(any());
+  }
+
+  @Test
+  public void givenUsers_whenGetUsersPage_thenReturnPageAndNextCursor() throws Exception {
+    // given
+    UserSummary user = new UserSummary(7L, "Firstname Lastname", "firstname@lastname", "1", new Date(), null,
+        UserStatus.OFFLINE);
+
+    given(userService.getUsers(3L, 1)).willReturn(Collections.singletonList(user));
+
+    // when
+    MockHttpServletRequestBuilder getRequest = get("/users?after=3&limit=1")
+        .contentType(MediaType.APPLICATION_JSON);
+
+    // then -> the page is full, so the id of its last user is the next cursor
+    mockMvc.perform(getRequest).andExpect(status().isOk())
+        .andExpect(header().string("X-Next-Cursor", "7"))
+        .andExpect(jsonPath("$", hasSize(1)))
+        .andExpect(jsonPath("$[0].id", is(7)))
+        .andExpect(jsonPath("$[0].username", is(user.getUsername())));
+  }
+
+  @Test
+  public void givenLastPage_whenGetUsersPage_thenNoNextCursor() throws Exception {
+    // given
+    given(userService.getUsers(null, 10)).willReturn(Collections.emptyList());
+
+    // when/then
+    mockMvc.perform(get("/users?limit=10").contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist("X-Next-Cursor"))
+        .andExpect(jsonPath("$", hasSize(0)));
+  }
+
   @Test
   public void createUser_validInput_userCreated() throws Exception {
     // given
@@ -102,6 +297,7 @@ public class UserControllerTest {
     userPostDTO.setPassword("password");
 
     given(userService.createUser(Mockito.any())).willReturn(user);
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.ONLINE);
 
     // when/then -> do the request + validate the result
     MockHttpServletRequestBuilder getRequest = post("/users")
@@ -118,10 +314,163 @@ public class UserControllerTest {
         .andExpect(jsonPath("$.creationDate").exists());
   }
 
+  @Test
+  public void createUser_takenUsername_conflict() throws Exception {
+    // given -> the insert violates the unique constraint on the username
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setName("Test User");
+    userPostDTO.setUsername("testUsername");
+    userPostDTO.setPassword("password");
+
+    SQLException uniqueViolation = new SQLException(
+        "Unique index or primary key violation: \"PUBLIC.UK_USERS_USERNAME_INDEX_4\"", "23505");
+    given(userService.createUser(Mockito.any()))
+        .willThrow(new DataIntegrityViolationException("could not execute statement", uniqueViolation));
+
+    // when/then
+    MockHttpServletRequestBuilder postRequest = post("/users")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO));
+
+    mockMvc.perform(postRequest)
+        .andExpect(status().isConflict())
+        .andExpect(content().string("The username is already taken"));
+  }
+
+  @Test
+  public void loginUser_rateLimited_tooManyRequests() throws Exception {
+    // given
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("testUsername");
+    userPostDTO.setPassword("password");
+
+    doThrow(new TooManyRequestsException("Too many login attempts from this client", 42))
+        .when(loginRateLimiter).acquire(anyString(), anyString());
+
+    // when/then -> refused before the credentials are checked
+    MockHttpServletRequestBuilder postRequest = post("/login")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO));
+
+    mockMvc.perform(postRequest)
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string(HttpHeaders.RETRY_AFTER, "42"));
+    verify(userService, times(0)).loginUser(any());
+  }
+
+  @Test
+  public void loginUser_wrongPassword_countedAgainstUsername() throws Exception {
+    // given
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("testUsername");
+    userPostDTO.setPassword("wrongPassword");
+
+    given(userService.loginUser(any())).willThrow(InvalidCredentialsException.wrongPassword());
+
+    // when
+    MockHttpServletRequestBuilder postRequest = post("/login")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO));
+
+    mockMvc.perform(postRequest)
+        .andExpect(status().isUnauthorized());
+
+    // then
+    verify(loginRateLimiter).recordFailure("127.0.0.1", "testUsername");
+  }
+
+  @Test
+  public void loginUser_usernameFailuresExhausted_correctPasswordRefused() throws Exception {
+    // given
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("testUsername");
+    userPostDTO.setPassword("correctPassword");
+
+    doThrow(new TooManyRequestsException("Too many failed login attempts for this user", 42))
+        .when(loginRateLimiter).acquire(anyString(), eq("testUsername"));
+
+    // when/then -> refused without looking at the password, the answer does
+    // not tell whether it was right
+    MockHttpServletRequestBuilder postRequest = post("/login")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(userPostDTO));
+
+    mockMvc.perform(postRequest)
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string(HttpHeaders.RETRY_AFTER, "42"));
+    verify(userService, times(0)).loginUser(any());
+  }
+
+  @Test
+  public void createUsers_jsonArray_returnsPerItemResults() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setName("Test User");
+    user.setUsername("testUsername");
+    user.setStatus(UserStatus.ONLINE);
+
+    UserBatchResult created = Mockito.mock(UserBatchResult.class);
+    given(created.getIndex()).willReturn(0);
+    given(created.getStatus()).willReturn(BatchItemStatus.CREATED);
+    given(created.getUser()).willReturn(user);
+    UserBatchResult invalid = Mockito.mock(UserBatchResult.class);
+    given(invalid.getIndex()).willReturn(1);
+    given(invalid.getStatus()).willReturn(BatchItemStatus.INVALID);
+    given(invalid.getMessage()).willReturn("Username and password cannot be empty");
+
+    given(userBatchService.createUsers(Mockito.anyList())).willReturn(Arrays.asList(created, invalid));
+
+    UserPostDTO valid = new UserPostDTO();
+    valid.setName("Test User");
+    valid.setUsername("testUsername");
+    valid.setPassword("password");
+    UserPostDTO withoutPassword = new UserPostDTO();
+    withoutPassword.setUsername("otherUsername");
+
+    // when
+    MockHttpServletRequestBuilder postRequest = post("/users/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(asJsonString(Arrays.asList(valid, withoutPassword)));
+
+    // then
+    mockMvc.perform(postRequest)
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$", hasSize(2)))
+        .andExpect(jsonPath("$[0].status", is("CREATED")))
+        .andExpect(jsonPath("$[0].user.username", is(user.getUsername())))
+        .andExpect(jsonPath("$[1].index", is(1)))
+        .andExpect(jsonPath("$[1].status", is("INVALID")));
+  }
+
+  @Test
+  public void createUsers_ndjson_parsesEveryLine() throws Exception {
+    // given
+    given(userBatchService.createUsers(Mockito.anyList())).willReturn(Collections.emptyList());
+
+    UserPostDTO first = new UserPostDTO();
+    first.setUsername("first");
+    first.setPassword("password");
+    UserPostDTO second = new UserPostDTO();
+    second.setUsername("second");
+    second.setPassword("password");
+
+    // when
+    MockHttpServletRequestBuilder postRequest = post("/users/batch")
+        .contentType("application/x-ndjson")
+        .content(asJsonString(first) + "\n" + asJsonString(second) + "\n");
+
+    // then
+    mockMvc.perform(postRequest).andExpect(status().isOk());
+    verify(userBatchService).createUsers(Mockito.argThat(users -> users.size() == 2
+        && "first".equals(users.get(0).getUsername())
+        && "second".equals(users.get(1).getUsername())));
+  }
+
   @Test
     public void getUser_invalidId_throwsException() throws Exception {
         // given
-        given(userService.getUserById(anyLong())).willThrow(new ResponseStatusException(HttpStatus.NOT_FOUND));
+        given(userService.getUserById(anyLong())).willThrow(UserNotFoundException.byId(1L));
 
         // when/then
         MockHttpServletRequestBuilder getRequest = get("/users/1")
@@ -137,8 +486,9 @@ public class UserControllerTest {
         UserPutDTO userPutDTO = new UserPutDTO();
         userPutDTO.setUsername("newUsername");
         
-        doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND))
-            .when(userService).updateUser(eq(1L), any(User.class), anyString());
+        given(tokenAuthenticator.authenticate("test-token")).willReturn(TEST_PRINCIPAL);
+        doThrow(UserNotFoundException.byId(1L))
+            .when(userService).updateUser(eq(1L), any(User.class), any(UserPrincipal.class), any());
 
         // when/then
         MockHttpServletRequestBuilder putRequest = put("/users/1")
@@ -150,6 +500,276 @@ public class UserControllerTest {
             .andExpect(status().isNotFound());
     }
 
+  @Test
+  public void getUser_validId_returnsETag() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUsername");
+    user.setStatus(UserStatus.ONLINE);
+    user.setVersion(3L);
+
+    given(userService.getUserById(1L)).willReturn(user);
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.ONLINE);
+
+    // when/then
+    mockMvc.perform(get("/users/1").contentType(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"3-ONLINE\""))
+        .andExpect(jsonPath("$.status", is("ONLINE")))
+        .andExpect(jsonPath("$.username", is(user.getUsername())));
+  }
+
+  @Test
+  public void getUser_requestId_echoedOrGenerated() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUsername");
+    given(userService.getUserById(1L)).willReturn(user);
+
+    // when/then -> a valid id is kept, a missing one is generated
+    mockMvc.perform(get("/users/1").header(RequestIdFilter.REQUEST_ID_HEADER, "client-42"))
+        .andExpect(header().string(RequestIdFilter.REQUEST_ID_HEADER, "client-42"));
+    mockMvc.perform(get("/users/1").header(RequestIdFilter.REQUEST_ID_HEADER, "not valid\n"))
+        .andExpect(header().string(RequestIdFilter.REQUEST_ID_HEADER, hasLength(36)));
+  }
+
+  @Test
+  public void getUser_acceptCbor_returnsCbor() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUsername");
+    user.setCreationDate(new Date(1_000L));
+    user.setVersion(3L);
+
+    given(userService.getUserById(1L)).willReturn(user);
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.ONLINE);
+
+    // when
+    MvcResult result = mockMvc.perform(get("/users/1").accept(MediaType.APPLICATION_CBOR))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+        .andExpect(header().string("Vary", "Accept"))
+        .andReturn();
+
+    // then -> same fields as JSON, dates as epoch milliseconds
+    JsonNode userNode = new ObjectMapper(new CBORFactory()).readTree(result.getResponse().getContentAsByteArray());
+    assertEquals("testUsername", userNode.get("username").asText());
+    assertEquals("ONLINE", userNode.get("status").asText());
+    assertEquals(1_000L, userNode.get("creationDate").asLong());
+  }
+
+  @Test
+  public void givenUsers_whenGetUsersAsSmile_thenReturnSmileArray() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("firstname@lastname");
+    given(presenceRegistry.statusOf(any())).willReturn(UserStatus.OFFLINE);
+    doAnswer(invocation -> {
+      Consumer<User> consumer = invocation.getArgument(0);
+      consumer.accept(user);
+      return null;
+    }).when(userService).streamUsers(any());
+
+    // when
+    MvcResult result = mockMvc.perform(get("/users").accept(BinaryFormatConfiguration.APPLICATION_SMILE_VALUE))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(BinaryFormatConfiguration.APPLICATION_SMILE_VALUE))
+        .andReturn();
+
+    // then
+    JsonNode users = new ObjectMapper(new SmileFactory()).readTree(result.getResponse().getContentAsByteArray());
+    assertEquals(1, users.size());
+    assertEquals("firstname@lastname", users.get(0).get("username").asText());
+  }
+
+  @Test
+  public void givenUsers_whenJsonRefusedWithQualityZero_thenReturnCborArray() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("firstname@lastname");
+    given(presenceRegistry.statusOf(any())).willReturn(UserStatus.OFFLINE);
+    doAnswer(invocation -> {
+      Consumer<User> consumer = invocation.getArgument(0);
+      consumer.accept(user);
+      return null;
+    }).when(userService).streamUsers(any());
+
+    // when/then -> */* would match JSON first, but JSON is refused
+    mockMvc.perform(get("/users").header(HttpHeaders.ACCEPT, "application/json;q=0, */*"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_CBOR));
+  }
+
+  @Test
+  public void givenUsers_whenGetUsersAsXml_thenNotAcceptable() throws Exception {
+    // when/then
+    mockMvc.perform(get("/users").accept(MediaType.APPLICATION_XML))
+        .andExpect(status().isNotAcceptable());
+  }
+
+  @Test
+  public void getUser_statusChanged_returnsNewRepresentation() throws Exception {
+    // given -> same version, but the user came online since the client's last read
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUsername");
+    user.setVersion(3L);
+
+    given(userService.getUserById(1L)).willReturn(user);
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.ONLINE);
+
+    // when/then
+    mockMvc.perform(get("/users/1").header("If-None-Match", "\"3-OFFLINE\""))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status", is("ONLINE")));
+  }
+
+  @Test
+  public void getUser_matchingIfNoneMatch_returnsNotModified() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUsername");
+    user.setVersion(3L);
+
+    given(userService.getUserById(1L)).willReturn(user);
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.OFFLINE);
+
+    // when/then -> the client already has version 3, no body is sent
+    mockMvc.perform(get("/users/1").header("If-None-Match", "\"3-OFFLINE\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", "\"3-OFFLINE\""))
+        .andExpect(content().string(""));
+  }
+
+  @Test
+  public void updateUser_ifMatch_passesExpectedVersion() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("newUsername");
+    user.setVersion(4L);
+
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("newUsername");
+
+    given(tokenAuthenticator.authenticate("test-token")).willReturn(TEST_PRINCIPAL);
+    given(userService.updateUser(eq(1L), any(User.class), eq(TEST_PRINCIPAL), eq(3L))).willReturn(user);
+    given(presenceRegistry.statusOf(1L)).willReturn(UserStatus.ONLINE);
+
+    // when/then -> only the version part of the entity tag is compared
+    mockMvc.perform(put("/users/1")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", "test-token")
+            .header("If-Match", "\"3-OFFLINE\"")
+            .content(asJsonString(userPutDTO)))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"4-ONLINE\""));
+  }
+
+  @Test
+  public void updateUser_weakIfMatch_returnsPreconditionFailed() throws Exception {
+    // given
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("newUsername");
+    given(tokenAuthenticator.authenticate("test-token")).willReturn(TEST_PRINCIPAL);
+
+    // when/then -> If-Match requires a strong comparison
+    mockMvc.perform(put("/users/1")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", "test-token")
+            .header("If-Match", "W/\"3-ONLINE\"")
+            .content(asJsonString(userPutDTO)))
+        .andExpect(status().isPreconditionFailed());
+    verify(userService, Mockito.never()).updateUser(anyLong(), any(User.class), any(UserPrincipal.class), any());
+  }
+
+  @Test
+  public void updateUser_noToken_unauthorized() throws Exception {
+    // given
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("newUsername");
+
+    // when/then -> refused before the controller is reached
+    mockMvc.perform(put("/users/1")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(asJsonString(userPutDTO)))
+        .andExpect(status().isUnauthorized());
+    verify(userService, Mockito.never()).updateUser(anyLong(), any(User.class), any(UserPrincipal.class), any());
+  }
+
+  @Test
+  public void updateUser_invalidToken_unauthorized() throws Exception {
+    // given -> the token resolves to nobody
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("newUsername");
+
+    // when/then
+    mockMvc.perform(put("/users/1")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", "Bearer payload.forged")
+            .content(asJsonString(userPutDTO)))
+        .andExpect(status().isUnauthorized());
+    verify(userService, Mockito.never()).updateUser(anyLong(), any(User.class), any(UserPrincipal.class), any());
+  }
+
+  @Test
+  public void updateUser_foreignToken_forbidden() throws Exception {
+    // given -> the token belongs to user 2
+    UserPutDTO userPutDTO = new UserPutDTO();
+    userPutDTO.setUsername("newUsername");
+    given(tokenAuthenticator.authenticate("Bearer other-token"))
+        .willReturn(new UserPrincipal(2L, "otherUsername", "other-token"));
+
+    // when/then
+    mockMvc.perform(put("/users/1")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", "Bearer other-token")
+            .content(asJsonString(userPutDTO)))
+        .andExpect(status().isForbidden());
+    verify(userService, Mockito.never()).updateUser(anyLong(), any(User.class), any(UserPrincipal.class), any());
+  }
+
+  @Test
+  public void loginUser_signedTokensEnabled_returnsSignedToken() throws Exception {
+    // given
+    User user = new User();
+    user.setId(1L);
+    user.setUsername("testUsername");
+    user.setToken("stored-token");
+
+    UserPostDTO userPostDTO = new UserPostDTO();
+    userPostDTO.setUsername("testUsername");
+    userPostDTO.setPassword("password");
+
+    given(userService.loginUser(any())).willReturn(user);
+    given(signedTokens.isEnabled()).willReturn(true);
+    given(signedTokens.issue(1L)).willReturn("payload.signature");
+
+    // when/then
+    mockMvc.perform(post("/login")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(asJsonString(userPostDTO)))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.token", is("payload.signature")));
+  }
+
+  @Test
+  public void logoutUser_validToken_noContent() throws Exception {
+    // given
+    given(tokenAuthenticator.authenticate("Bearer test-token")).willReturn(TEST_PRINCIPAL);
+
+    // when/then
+    mockMvc.perform(post("/logout").header("Authorization", "Bearer test-token"))
+        .andExpect(status().isNoContent());
+    verify(userService, times(1)).logoutUser(TEST_PRINCIPAL);
+  }
+
 
   /**
    * Helper Method to convert userPostDTO into a JSON string such that the input
@@ -0,0 +1,124 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * UserListCacheIntegrationTest
+ * Runs the user list cache against a replica that never catches up with the
+ * primary: it only has the users as they were copied to it.
+ */
+@WebAppConfiguration
+@SpringBootTest
+public class UserListCacheIntegrationTest {
+
+  private static final String REPLICA_URL = "jdbc:h2:mem:lagging-replica-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserListCache userListCache;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private DataSource dataSource;
+
+  private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+  @DynamicPropertySource
+  static void laggingReplica(DynamicPropertyRegistry registry) {
+    Flyway.configure().dataSource(REPLICA_URL, "sa", "").locations("classpath:db/migration").load().migrate();
+    registry.add("users.datasource.replica-urls", () -> REPLICA_URL);
+  }
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+    replica.update("DELETE FROM users");
+    userListCache.invalidateAll();
+  }
+
+  @Test
+  public void get_afterProfileUpdate_notReloadedFromLaggingReplica() throws IOException {
+    // given -> the replica has the user as it was created
+    User user = new User();
+    user.setName("testName");
+    user.setUsername("oldUsername");
+    user.setPassword("testPassword");
+    user = userService.createUser(user);
+    copyToReplica(user.getId());
+    ObjectWriter userWriter = objectMapper.writerFor(UserGetDTO.class);
+    userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+
+    // when -> the rename is committed on the primary only
+    User rename = new User();
+    rename.setUsername("newUsername");
+    userService.updateUser(user.getId(), rename, UserPrincipal.of(user));
+    JsonNode list = objectMapper.readTree(userListCache.get(MediaType.APPLICATION_JSON, userWriter).getBody());
+
+    // then
+    assertEquals(1, list.size());
+    assertEquals("newUsername", list.get(0).get("username").asText());
+    assertEquals("oldUsername", replica.queryForObject("SELECT username FROM users", String.class));
+  }
+
+  @Test
+  public void get_fullReload_notReadFromLaggingReplica() throws IOException {
+    // given -> the user is on the primary only
+    User user = new User();
+    user.setName("testName");
+    user.setUsername("testUsername");
+    user.setPassword("testPassword");
+    userService.createUser(user);
+
+    // when -> the cache was invalidated as a whole, as after a batch import
+    userListCache.invalidateAll();
+    ObjectWriter userWriter = objectMapper.writerFor(UserGetDTO.class);
+    JsonNode list = objectMapper.readTree(userListCache.get(MediaType.APPLICATION_JSON, userWriter).getBody());
+
+    // then
+    assertEquals(1, list.size());
+    assertEquals("testUsername", list.get(0).get("username").asText());
+  }
+
+  private void copyToReplica(Long userId) {
+    // outside of a transaction the routing data source hands out the primary
+    Map<String, Object> row = new JdbcTemplate(dataSource).queryForMap("SELECT * FROM users WHERE id = ?", userId);
+    String columns = String.join(", ", row.keySet());
+    String placeholders = String.join(", ", Collections.nCopies(row.size(), "?"));
+    replica.update("INSERT INTO users (" + columns + ") VALUES (" + placeholders + ")", row.values().toArray());
+  }
+}
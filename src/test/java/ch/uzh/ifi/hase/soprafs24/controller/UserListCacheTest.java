@@ -0,0 +1,186 @@
+package ch.uzh.ifi.hase.soprafs24.controller;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserEventType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
+import ch.uzh.ifi.hase.soprafs24.service.PresenceRegistry;
+import ch.uzh.ifi.hase.soprafs24.service.UserEvent;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * UserListCacheTest
+ * Tests that the cached user list is read once, patched user by user on
+ * events, serialized again on status changes only and compressed on demand.
+ */
+public class UserListCacheTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final ObjectWriter userWriter = objectMapper.writerFor(UserGetDTO.class);
+
+  private UserService userService;
+
+  private PresenceRegistry presenceRegistry;
+
+  private UserListCache userListCache;
+
+  private List<User> users;
+
+  @BeforeEach
+  public void setup() {
+    userService = Mockito.mock(UserService.class);
+    presenceRegistry = Mockito.mock(PresenceRegistry.class);
+    Mockito.when(presenceRegistry.statusOf(Mockito.any())).thenReturn(UserStatus.OFFLINE);
+
+    users = new ArrayList<>();
+    for (long id = 1; id <= 3; id++) {
+      users.add(user(id, "username" + id));
+    }
+    Mockito.doAnswer(invocation -> {
+      Consumer<User> consumer = invocation.getArgument(0);
+      users.forEach(consumer);
+      return null;
+    }).when(userService).streamUsers(Mockito.any());
+
+    userListCache = new UserListCache(userService, presenceRegistry, true, DataSize.ofBytes(1_024));
+  }
+
+  @Test
+  public void get_unchanged_servesSameBytes() {
+    // when
+    UserListCache.Snapshot first = userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+    UserListCache.Snapshot second = userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+
+    // then
+    assertSame(first.getBody(), second.getBody());
+    Mockito.verify(userService, Mockito.times(1)).streamUsers(Mockito.any());
+    assertEquals(1, userListCache.buildCount());
+    assertEquals(1, userListCache.hitCount());
+  }
+
+  @Test
+  public void get_afterProfileUpdate_reloadsOnlyThatUser() throws IOException {
+    // given
+    userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+    Mockito.when(userService.getUsersByIds(Collections.singletonList(2L)))
+        .thenReturn(Collections.singletonList(user(2L, "renamed")));
+
+    // when
+    userListCache.onUserChanged(new UserEvent(UserEventType.PROFILE_UPDATED, 2L, null, "renamed", null, null));
+    JsonNode list = readList(userListCache.get(MediaType.APPLICATION_JSON, userWriter));
+
+    // then -> same order, the other users were not read again
+    assertEquals(3, list.size());
+    assertEquals("username1", list.get(0).get("username").asText());
+    assertEquals("renamed", list.get(1).get("username").asText());
+    assertEquals("username3", list.get(2).get("username").asText());
+    Mockito.verify(userService, Mockito.times(1)).streamUsers(Mockito.any());
+  }
+
+  @Test
+  public void get_afterCreation_appendsUser() throws IOException {
+    // given
+    userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+    Mockito.when(userService.getUsersByIds(Collections.singletonList(4L)))
+        .thenReturn(Collections.singletonList(user(4L, "username4")));
+
+    // when
+    userListCache.onUserChanged(new UserEvent(UserEventType.CREATED, 4L, null, "username4", null,
+        UserStatus.ONLINE));
+    JsonNode list = readList(userListCache.get(MediaType.APPLICATION_JSON, userWriter));
+
+    // then
+    assertEquals(4, list.size());
+    assertEquals(4L, list.get(3).get("id").asLong());
+  }
+
+  @Test
+  public void get_afterStatusChange_serializesAgainWithoutReading() throws IOException {
+    // given
+    userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+    Mockito.when(presenceRegistry.statusOf(1L)).thenReturn(UserStatus.ONLINE);
+
+    // when
+    userListCache.onStatusChanged(new UserEvent(UserEventType.STATUS_CHANGED, 1L, null, null, null,
+        UserStatus.ONLINE));
+    JsonNode list = readList(userListCache.get(MediaType.APPLICATION_JSON, userWriter));
+
+    // then
+    assertEquals("ONLINE", list.get(0).get("status").asText());
+    assertEquals(2, userListCache.buildCount());
+    Mockito.verify(userService, Mockito.times(1)).streamUsers(Mockito.any());
+    Mockito.verify(userService, Mockito.never()).getUsersByIds(Mockito.any());
+  }
+
+  @Test
+  public void get_manyStaleUsers_readsAllAgain() {
+    // given
+    userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+
+    // when
+    for (long id = 1; id <= UserListCache.MAX_RELOADED_USERS + 1; id++) {
+      userListCache.invalidate(id);
+    }
+    userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+
+    // then
+    Mockito.verify(userService, Mockito.times(2)).streamUsers(Mockito.any());
+    Mockito.verify(userService, Mockito.never()).getUsersByIds(Mockito.any());
+  }
+
+  @Test
+  public void gzipped_shortList_notCompressed() {
+    // when
+    UserListCache.Snapshot snapshot = userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+
+    // then -> three users stay below the 1KB minimum
+    assertNull(userListCache.gzipped(snapshot));
+  }
+
+  @Test
+  public void gzipped_longList_compressedOnce() {
+    // given
+    for (long id = 4; id <= 100; id++) {
+      users.add(user(id, "username" + id));
+    }
+    UserListCache.Snapshot snapshot = userListCache.get(MediaType.APPLICATION_JSON, userWriter);
+
+    // when
+    byte[] gzipped = userListCache.gzipped(snapshot);
+
+    // then
+    assertNotNull(gzipped);
+    assertSame(gzipped, userListCache.gzipped(snapshot));
+  }
+
+  private JsonNode readList(UserListCache.Snapshot snapshot) throws IOException {
+    return objectMapper.readTree(snapshot.getBody());
+  }
+
+  private static User user(Long id, String username) {
+    User user = new User();
+    user.setId(id);
+    user.setUsername(username);
+    return user;
+  }
+}
@@ -0,0 +1,91 @@
+package ch.uzh.ifi.hase.soprafs24.logging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * ExceptionLogSamplerTest
+ * Tests that repeated exceptions are logged a limited number of times per
+ * interval and that the suppressed ones are reported afterwards, with a clock
+ * under test control.
+ */
+public class ExceptionLogSamplerTest {
+
+  private AtomicLong now;
+
+  private Logger log;
+
+  private ExceptionLogSampler sampler;
+
+  @BeforeEach
+  public void setup() {
+    now = new AtomicLong();
+    log = Mockito.mock(Logger.class);
+    sampler = new ExceptionLogSampler(2, Duration.ofMinutes(1), now::get);
+  }
+
+  @Test
+  public void error_repeatedException_loggedUpToLimit() {
+    // when -> the same exception, thrown at the same place, five times
+    int logged = 0;
+    for (int i = 0; i < 5; i++) {
+      if (sampler.error(log, "failed", failure())) {
+        logged++;
+      }
+    }
+
+    // then
+    assertEquals(2, logged);
+    assertEquals(3, sampler.suppressedCount());
+    verify(log, times(2)).error(eq("failed"), any(Throwable.class));
+  }
+
+  @Test
+  public void error_differentExceptions_sampledSeparately() {
+    // when
+    for (int i = 0; i < 3; i++) {
+      sampler.error(log, "failed", failure());
+      sampler.error(log, "failed", new IllegalArgumentException());
+    }
+
+    // then -> two of each
+    assertEquals(2, sampler.suppressedCount());
+  }
+
+  @Test
+  public void error_nextInterval_reportsSuppressed() {
+    // given
+    for (int i = 0; i < 5; i++) {
+      sampler.error(log, "failed", failure());
+    }
+
+    // when
+    now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+    boolean logged = sampler.error(log, "failed", failure());
+
+    // then -> logged again with the number of left out events, and counted towards the new interval
+    assertTrue(logged);
+    verify(log, times(1)).error(anyString(), eq("failed"), eq(3L), any(Throwable.class));
+    assertTrue(sampler.error(log, "failed", failure()));
+    assertFalse(sampler.error(log, "failed", failure()));
+  }
+
+  private static IllegalStateException failure() {
+    return new IllegalStateException("failure");
+  }
+}
@@ -0,0 +1,96 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.SqlStatementBudgetExceededException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * SqlStatementCountingFilterTest
+ * Runs the filter around handlers without a response body, which a response
+ * body advice never sees, and checks the budget of the handler method.
+ */
+public class SqlStatementCountingFilterTest {
+
+  private final SqlStatementCountingFilter filter = new SqlStatementCountingFilter(true, true);
+
+  @Test
+  public void voidHandler_overBudget_fails() throws Exception {
+    // given
+    MockHttpServletRequest request = requestTo("logout");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // when/then
+    assertThrows(SqlStatementBudgetExceededException.class,
+        () -> filter.doFilter(request, response, respondingWith(HttpStatus.NO_CONTENT, 2)));
+  }
+
+  @Test
+  public void errorResponse_overBudget_fails() throws Exception {
+    // given
+    MockHttpServletRequest request = requestTo("logout");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // when/then
+    assertThrows(SqlStatementBudgetExceededException.class,
+        () -> filter.doFilter(request, response, respondingWith(HttpStatus.NOT_FOUND, 2)));
+  }
+
+  @Test
+  public void voidHandler_withinBudget_reportsCount() throws Exception {
+    // given
+    MockHttpServletRequest request = requestTo("logout");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // when
+    assertDoesNotThrow(() -> filter.doFilter(request, response, respondingWith(HttpStatus.NO_CONTENT, 1)));
+
+    // then
+    assertEquals("1", response.getHeader(SqlStatementHeaderAdvice.STATEMENT_COUNT_HEADER));
+  }
+
+  @Test
+  public void handlerWithoutBudget_notChecked() throws Exception {
+    // given
+    MockHttpServletRequest request = requestTo("unlimited");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // when/then
+    assertDoesNotThrow(() -> filter.doFilter(request, response, respondingWith(HttpStatus.NO_CONTENT, 5)));
+  }
+
+  private static MockHttpServletRequest requestTo(String handlerMethod) throws NoSuchMethodException {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/" + handlerMethod);
+    request.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE,
+        new HandlerMethod(new Handlers(), Handlers.class.getMethod(handlerMethod)));
+    return request;
+  }
+
+  private static FilterChain respondingWith(HttpStatus status, int statements) {
+    return (request, response) -> {
+      for (int i = 0; i < statements; i++) {
+        SqlStatementCounter.increment();
+      }
+      ((MockHttpServletResponse) response).setStatus(status.value());
+    };
+  }
+
+  public static class Handlers {
+
+    @SqlStatementBudget(1)
+    public void logout() {
+    }
+
+    public void unlimited() {
+    }
+  }
+}
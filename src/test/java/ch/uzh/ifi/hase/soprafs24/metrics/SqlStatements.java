@@ -0,0 +1,28 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SqlStatements
+ * Test helper to pin down the number of SQL statements of an operation, so
+ * that an additional query on a hot path makes a test fail.
+ */
+public final class SqlStatements {
+
+  private SqlStatements() {
+  }
+
+  /**
+   * Runs the action on the current thread and returns the number of SQL
+   * statements it issued.
+   */
+  public static long countDuring(Runnable action) {
+    SqlStatementCounter.reset();
+    action.run();
+    return SqlStatementCounter.count();
+  }
+
+  public static void assertStatementCount(long expected, Runnable action) {
+    assertEquals(expected, countDuring(action), "number of SQL statements");
+  }
+}
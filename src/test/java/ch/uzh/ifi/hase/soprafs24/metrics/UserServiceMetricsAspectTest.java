@@ -0,0 +1,72 @@
+package ch.uzh.ifi.hase.soprafs24.metrics;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.service.UserService;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * UserServiceMetricsAspectTest
+ * Applies the aspect to a mocked UserService and checks the recorded timers.
+ */
+public class UserServiceMetricsAspectTest {
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private UserService userService;
+
+  private UserService timedUserService;
+
+  @BeforeEach
+  public void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    userService = Mockito.mock(UserService.class);
+
+    AspectJProxyFactory proxyFactory = new AspectJProxyFactory(userService);
+    proxyFactory.setProxyTargetClass(true);
+    proxyFactory.addAspect(new UserServiceMetricsAspect(meterRegistry));
+    timedUserService = proxyFactory.getProxy();
+  }
+
+  @Test
+  public void getUserById_success_timedAsSuccess() {
+    // given
+    Mockito.when(userService.getUserById(1L)).thenReturn(new User());
+
+    // when
+    timedUserService.getUserById(1L);
+
+    // then
+    assertEquals(1, timer("getUserById", UserServiceMetricsAspect.SUCCESS).count());
+  }
+
+  @Test
+  public void getUserById_notFound_timedWithStatus() {
+    // given
+    Mockito.when(userService.getUserById(1L)).thenThrow(UserNotFoundException.byId(1L));
+
+    // when
+    assertThrows(UserNotFoundException.class, () -> timedUserService.getUserById(1L));
+
+    // then
+    assertEquals(1, timer("getUserById", "404").count());
+  }
+
+  private Timer timer(String method, String outcome) {
+    Timer timer = meterRegistry.find(UserServiceMetricsAspect.TIMER_NAME)
+        .tag("method", method)
+        .tag("outcome", outcome)
+        .timer();
+    assertNotNull(timer);
+    return timer;
+  }
+}
@@ -0,0 +1,132 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.TooManyRequestsException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LoginRateLimiterTest
+ * Tests the per-IP limit of attempts and the limit of failures per username
+ * and IP, the refill, the Retry-After value and the bound on the number of
+ * buckets, with a clock under test control.
+ */
+public class LoginRateLimiterTest {
+
+  private AtomicLong now;
+
+  private LoginRateLimiter rateLimiter;
+
+  @BeforeEach
+  public void setup() {
+    now = new AtomicLong();
+    // 6 attempts per minute and IP, 3 per minute and username
+    rateLimiter = new LoginRateLimiter(true, 6, Duration.ofMinutes(1), 3, Duration.ofMinutes(1), 1_000, now::get);
+  }
+
+  @Test
+  public void acquire_usernameFailuresExhausted_throwsWithRetryAfter() {
+    // given
+    for (int i = 0; i < 3; i++) {
+      rateLimiter.acquire("10.0.0.1", "testUsername");
+      rateLimiter.recordFailure("10.0.0.1", "testUsername");
+    }
+
+    // when/then -> refused before the credentials are checked, so the correct
+    // password is refused as well; one token comes back every 20 seconds
+    TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+        () -> rateLimiter.acquire("10.0.0.1", "testUsername"));
+    assertTrue(exception.getRetryAfterSeconds() >= 20 && exception.getRetryAfterSeconds() <= 21);
+    assertEquals(0, exception.getStackTrace().length);
+    assertEquals(3, rateLimiter.allowedCount());
+    assertEquals(1, rateLimiter.usernameRejectedCount());
+  }
+
+  @Test
+  public void acquire_afterFailuresFromOtherClient_ownerStillLogsIn() {
+    // given -> another client used up its failures for the username
+    for (int i = 0; i < 3; i++) {
+      rateLimiter.acquire("10.0.0.1", "testUsername");
+      rateLimiter.recordFailure("10.0.0.1", "testUsername");
+    }
+    assertThrows(TooManyRequestsException.class, () -> rateLimiter.acquire("10.0.0.1", "testUsername"));
+
+    // when/then -> the owner's client has a bucket of its own
+    for (int i = 0; i < 6; i++) {
+      assertDoesNotThrow(() -> rateLimiter.acquire("10.0.0.99", "testUsername"));
+    }
+  }
+
+  @Test
+  public void acquire_successfulAttempts_notCountedAgainstUsername() {
+    // when/then -> only recordFailure takes a token of the username
+    for (int i = 0; i < 6; i++) {
+      assertDoesNotThrow(() -> rateLimiter.acquire("10.0.0.1", "testUsername"));
+    }
+    assertEquals(0, rateLimiter.usernameRejectedCount());
+  }
+
+  @Test
+  public void acquire_ipLimitExhausted_throwsForEveryUsername() {
+    // given
+    for (int i = 0; i < 6; i++) {
+      rateLimiter.acquire("10.0.0.1", "username" + i);
+    }
+
+    // when/then
+    assertThrows(TooManyRequestsException.class, () -> rateLimiter.acquire("10.0.0.1", "otherUsername"));
+    assertDoesNotThrow(() -> rateLimiter.acquire("10.0.0.2", "otherUsername"));
+    assertEquals(1, rateLimiter.ipRejectedCount());
+  }
+
+  @Test
+  public void acquire_afterRefill_allowedAgain() {
+    // given
+    for (int i = 0; i < 3; i++) {
+      rateLimiter.recordFailure("10.0.0.1", "testUsername");
+    }
+    assertThrows(TooManyRequestsException.class, () -> rateLimiter.acquire("10.0.0.1", "testUsername"));
+
+    // when
+    now.addAndGet(TimeUnit.SECONDS.toNanos(21));
+
+    // then -> one token was refilled, for one more failure
+    assertDoesNotThrow(() -> rateLimiter.acquire("10.0.0.1", "testUsername"));
+    rateLimiter.recordFailure("10.0.0.1", "testUsername");
+    assertThrows(TooManyRequestsException.class, () -> rateLimiter.acquire("10.0.0.1", "testUsername"));
+  }
+
+  @Test
+  public void acquire_manyKeys_bucketsStayBounded() {
+    // when
+    for (int i = 0; i < 100_000; i++) {
+      rateLimiter.acquire("ip" + i, "username" + i);
+      rateLimiter.recordFailure("ip" + i, "username" + i);
+    }
+
+    // then -> at most 1000 buckets (rounded up per stripe) for IPs and for usernames
+    assertTrue(rateLimiter.trackedKeys() <= 2 * 1_024, "tracked keys: " + rateLimiter.trackedKeys());
+  }
+
+  @Test
+  public void acquire_disabled_neverThrows() {
+    // given
+    LoginRateLimiter disabled = new LoginRateLimiter(false, 1, Duration.ofMinutes(1), 1, Duration.ofMinutes(1),
+        1_000, now::get);
+
+    // when/then
+    for (int i = 0; i < 10; i++) {
+      disabled.acquire("10.0.0.1", "testUsername");
+      disabled.recordFailure("10.0.0.1", "testUsername");
+    }
+    assertEquals(0, disabled.trackedKeys());
+  }
+}
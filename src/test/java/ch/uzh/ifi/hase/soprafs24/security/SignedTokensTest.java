@@ -0,0 +1,144 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * SignedTokensTest
+ * Tests issuing and verifying signed tokens, their expiry, tampering and the
+ * revocation list, with a clock under test control.
+ */
+public class SignedTokensTest {
+
+  private static final String SIGNING_KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+  private AtomicLong now;
+
+  private RevokedTokenRepository revokedTokenRepository;
+
+  private TokenRevocationList revocationList;
+
+  private SignedTokens signedTokens;
+
+  @BeforeEach
+  public void setup() {
+    now = new AtomicLong(1_700_000_000L);
+    revokedTokenRepository = Mockito.mock(RevokedTokenRepository.class);
+    revocationList = new TokenRevocationList(revokedTokenRepository, now::get);
+    signedTokens = new SignedTokens(true, SIGNING_KEY, Duration.ofHours(1), revocationList, now::get);
+  }
+
+  @Test
+  public void verify_issuedToken_returnsPrincipal() {
+    // given
+    String token = signedTokens.issue(42L);
+
+    // when
+    UserPrincipal principal = signedTokens.verify(token);
+
+    // then
+    assertTrue(SignedTokens.isSignedToken(token));
+    assertNotNull(principal);
+    assertEquals(42L, principal.getId());
+    assertEquals(token, principal.getToken());
+    assertEquals(1, signedTokens.acceptedCount());
+  }
+
+  @Test
+  public void verify_expiredToken_returnsNull() {
+    // given
+    String token = signedTokens.issue(42L);
+
+    // when
+    now.addAndGet(Duration.ofHours(1).getSeconds());
+
+    // then
+    assertNull(signedTokens.verify(token));
+    assertEquals(1, signedTokens.rejectedCount());
+  }
+
+  @Test
+  public void verify_tamperedToken_returnsNull() {
+    // given -> the payload of a token of user 42 with the signature of a token of user 1
+    String token = signedTokens.issue(42L);
+    String otherToken = signedTokens.issue(1L);
+    String forged = token.substring(0, token.indexOf('.')) + otherToken.substring(otherToken.indexOf('.'));
+
+    // then
+    assertNull(signedTokens.verify(forged));
+    assertNull(signedTokens.verify("not.base64!"));
+    assertNull(signedTokens.verify("."));
+  }
+
+  @Test
+  public void verify_tokenOfOtherKey_returnsNull() {
+    // given
+    SignedTokens otherKey = new SignedTokens(true, "", Duration.ofHours(1), revocationList, now::get);
+
+    // then
+    assertNull(signedTokens.verify(otherKey.issue(42L)));
+  }
+
+  @Test
+  public void revoke_validToken_rejectedAndPersisted() {
+    // given
+    String token = signedTokens.issue(42L);
+    String otherToken = signedTokens.issue(42L);
+
+    // when
+    signedTokens.revoke(token);
+    signedTokens.revoke(token);
+
+    // then -> only this token is revoked, and it is stored once until it expires
+    assertNull(signedTokens.verify(token));
+    assertNotNull(signedTokens.verify(otherToken));
+    verify(revokedTokenRepository, times(1)).save(anyLong(), eq(now.get() + 3_600));
+  }
+
+  @Test
+  public void refresh_expiredRevocations_areDropped() {
+    // given
+    signedTokens.revoke(signedTokens.issue(42L));
+    Mockito.when(revokedTokenRepository.findUnexpired(anyLong())).thenReturn(Collections.emptyMap());
+    assertEquals(1, revocationList.size());
+
+    // when
+    now.addAndGet(Duration.ofHours(2).getSeconds());
+    revocationList.refresh();
+
+    // then
+    assertEquals(0, revocationList.size());
+    verify(revokedTokenRepository, times(1)).deleteExpired(now.get());
+  }
+
+  @Test
+  public void isSignedToken_randomToken_false() {
+    assertFalse(SignedTokens.isSignedToken("0b7e6ba2-8f0b-4d4e-9c3e-5c0d1b9a2f11"));
+    assertFalse(SignedTokens.isSignedToken(null));
+  }
+
+  @Test
+  public void constructor_shortKey_throws() {
+    String shortKey = Base64.getEncoder().encodeToString(new byte[16]);
+    assertThrows(IllegalArgumentException.class,
+        () -> new SignedTokens(true, shortKey, Duration.ofHours(1), revocationList, now::get));
+  }
+}
@@ -0,0 +1,121 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.RevokedTokenRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * TokenAuthenticatorTest
+ * Tests how Authorization header values are resolved to principals, and that
+ * only well-formed random tokens are looked up in the database, and only
+ * while signed tokens are off.
+ */
+public class TokenAuthenticatorTest {
+
+  private static final String RANDOM_TOKEN = "0b7e6ba2-8f0b-4d4e-9c3e-5c0d1b9a2f11";
+
+  private UserRepository userRepository;
+
+  private SignedTokens signedTokens;
+
+  private TokenAuthenticator tokenAuthenticator;
+
+  private TokenAuthenticator signedTokenAuthenticator;
+
+  private User testUser;
+
+  @BeforeEach
+  public void setup() {
+    userRepository = Mockito.mock(UserRepository.class);
+    TokenRevocationList revocationList = new TokenRevocationList(Mockito.mock(RevokedTokenRepository.class));
+    signedTokens = new SignedTokens(true, "", Duration.ofHours(1), revocationList);
+    tokenAuthenticator = new TokenAuthenticator(new SignedTokens(false, "", Duration.ofHours(1), revocationList),
+        newTokenCache(), userRepository);
+    signedTokenAuthenticator = new TokenAuthenticator(signedTokens, newTokenCache(), userRepository);
+
+    testUser = new User();
+    testUser.setId(1L);
+    testUser.setUsername("testUsername");
+    testUser.setToken(RANDOM_TOKEN);
+    Mockito.when(userRepository.findByToken(RANDOM_TOKEN)).thenReturn(testUser);
+  }
+
+  @Test
+  public void authenticate_repeatedRandomToken_resolvedFromCache() {
+    // when
+    UserPrincipal first = tokenAuthenticator.authenticate("Bearer " + RANDOM_TOKEN);
+    UserPrincipal second = tokenAuthenticator.authenticate(RANDOM_TOKEN);
+
+    // then -> only the first call looks up the token in the database
+    assertEquals(1L, first.getId());
+    assertEquals(1L, second.getId());
+    verify(userRepository, times(1)).findByToken(RANDOM_TOKEN);
+  }
+
+  @Test
+  public void authenticate_signedToken_noLookup() {
+    // given
+    String signedToken = signedTokens.issue(1L);
+
+    // when
+    UserPrincipal principal = signedTokenAuthenticator.authenticate("Bearer " + signedToken);
+
+    // then
+    assertEquals(1L, principal.getId());
+    verify(userRepository, never()).findByToken(any());
+  }
+
+  @Test
+  public void authenticate_storedRandomTokenWhileSigned_refused() {
+    // when/then -> the random token is still stored and listed, but no longer valid
+    assertNull(signedTokenAuthenticator.authenticate("Bearer " + RANDOM_TOKEN));
+    verify(userRepository, never()).findByToken(any());
+  }
+
+  @Test
+  public void authenticate_signedTokenWhileOff_refused() {
+    assertNull(tokenAuthenticator.authenticate("Bearer " + signedTokens.issue(1L)));
+  }
+
+  @Test
+  public void authenticate_malformedTokens_noLookup() {
+    // when/then -> nothing that could belong to a user reaches the database
+    assertNull(tokenAuthenticator.authenticate(null));
+    assertNull(tokenAuthenticator.authenticate(""));
+    assertNull(tokenAuthenticator.authenticate("Bearer "));
+    assertNull(tokenAuthenticator.authenticate("Bearer test-token"));
+    assertNull(tokenAuthenticator.authenticate("Bearer payload.forged"));
+    verify(userRepository, never()).findByToken(any());
+  }
+
+  @Test
+  public void authenticate_unknownRandomToken_returnsNull() {
+    assertNull(tokenAuthenticator.authenticate("Bearer 11111111-2222-3333-4444-555555555555"));
+  }
+
+  @Test
+  public void authenticate_repeatedUnknownRandomToken_looksUpOnce() {
+    // when
+    assertNull(tokenAuthenticator.authenticate("Bearer 11111111-2222-3333-4444-555555555555"));
+    assertNull(tokenAuthenticator.authenticate("Bearer 11111111-2222-3333-4444-555555555555"));
+
+    // then
+    verify(userRepository, times(1)).findByToken("11111111-2222-3333-4444-555555555555");
+  }
+
+  private static UserTokenCache newTokenCache() {
+    return new UserTokenCache(100, Duration.ofMinutes(1), 100, Duration.ofSeconds(10));
+  }
+}
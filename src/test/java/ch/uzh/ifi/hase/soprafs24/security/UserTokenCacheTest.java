@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs24.security;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * UserTokenCacheTest
+ * Tests the caching, invalidation and the counters of the token cache.
+ */
+public class UserTokenCacheTest {
+
+  private UserTokenCache tokenCache;
+
+  private User testUser;
+
+  private AtomicInteger loads;
+
+  private final AtomicLong now = new AtomicLong();
+
+  @BeforeEach
+  public void setup() {
+    tokenCache = new UserTokenCache(100, Duration.ofMinutes(1), 100, Duration.ofSeconds(10), now::get);
+    loads = new AtomicInteger();
+
+    testUser = new User();
+    testUser.setId(1L);
+    testUser.setUsername("testUsername");
+    testUser.setToken("test-token");
+  }
+
+  private User load(String token) {
+    loads.incrementAndGet();
+    return testUser.getToken().equals(token) ? testUser : null;
+  }
+
+  @Test
+  public void get_repeatedLookup_loadsOnce() {
+    // when
+    UserPrincipal first = tokenCache.get("test-token", this::load);
+    UserPrincipal second = tokenCache.get("test-token", this::load);
+
+    // then
+    assertEquals(1, loads.get());
+    assertEquals(testUser.getId(), first.getId());
+    assertEquals(testUser.getUsername(), second.getUsername());
+    assertEquals(1, tokenCache.missCount());
+    assertEquals(1, tokenCache.hitCount());
+  }
+
+  @Test
+  public void get_unknownToken_cachedUntilTtl() {
+    // when
+    assertNull(tokenCache.get("unknown-token", this::load));
+    assertNull(tokenCache.get("unknown-token", this::load));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    assertNull(tokenCache.get("unknown-token", this::load));
+
+    // then
+    assertEquals(2, loads.get());
+    assertEquals(1, tokenCache.unknownSize());
+  }
+
+  @Test
+  public void put_unknownToken_isKnownAgain() {
+    // given
+    testUser.setToken("issued-token");
+    tokenCache.get("issued-token", token -> null);
+
+    // when
+    tokenCache.put(testUser);
+
+    // then
+    assertEquals(testUser.getId(), tokenCache.get("issued-token", this::load).getId());
+    assertEquals(0, loads.get());
+  }
+
+  @Test
+  public void invalidate_removesEntry() {
+    // given
+    tokenCache.put(testUser);
+
+    // when
+    tokenCache.invalidate("test-token");
+    tokenCache.get("test-token", this::load);
+
+    // then
+    assertEquals(1, loads.get());
+  }
+}
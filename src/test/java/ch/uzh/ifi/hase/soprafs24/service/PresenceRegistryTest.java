@@ -0,0 +1,163 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserEventType;
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * PresenceRegistryTest
+ * Tests the derived status and the coalesced write-behind of the presence
+ * registry with a manually advanced clock, and that only committed flushes
+ * count as persisted.
+ */
+public class PresenceRegistryTest {
+
+  private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+  @Mock
+  private UserRepository userRepository;
+
+  @Mock
+  private ApplicationEventPublisher eventPublisher;
+
+  private final AtomicLong now = new AtomicLong(1_000_000L);
+
+  private PresenceRegistry presenceRegistry;
+
+  @BeforeEach
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    presenceRegistry = new PresenceRegistry(userRepository, eventPublisher, TIMEOUT, now::get);
+  }
+
+  @Test
+  public void statusOf_unknownUser_isOffline() {
+    assertEquals(UserStatus.OFFLINE, presenceRegistry.statusOf(1L));
+  }
+
+  @Test
+  public void statusOf_afterTimeout_isOffline() {
+    // given
+    presenceRegistry.touch(1L);
+    assertEquals(UserStatus.ONLINE, presenceRegistry.statusOf(1L));
+
+    // when
+    now.addAndGet(TIMEOUT.toMillis());
+
+    // then
+    assertEquals(UserStatus.OFFLINE, presenceRegistry.statusOf(1L));
+  }
+
+  @Test
+  public void flush_manyHeartbeats_coalescedIntoOneUpdate() {
+    // given
+    for (int i = 0; i < 10; i++) {
+      presenceRegistry.touch(1L);
+      presenceRegistry.touch(2L);
+    }
+
+    // when
+    presenceRegistry.flush();
+    presenceRegistry.flush();
+
+    // then -> one bulk update for both users, nothing left to write the second time
+    Mockito.verify(userRepository, Mockito.times(1)).updateStatus(Arrays.asList(1L, 2L), UserStatus.ONLINE);
+    Mockito.verify(userRepository, Mockito.times(1)).updateStatus(Mockito.anyCollection(), Mockito.any());
+  }
+
+  @Test
+  public void flush_timedOutUser_persistedOfflineAndDropped() {
+    // given
+    presenceRegistry.touch(1L);
+    presenceRegistry.flush();
+    now.addAndGet(TIMEOUT.toMillis());
+
+    // when
+    presenceRegistry.flush();
+    presenceRegistry.flush();
+
+    // then
+    Mockito.verify(userRepository).updateStatus(Collections.singletonList(1L), UserStatus.OFFLINE);
+    assertEquals(0, presenceRegistry.size());
+  }
+
+  @Test
+  public void flush_rolledBack_writtenAgainByNextFlush() {
+    // given
+    presenceRegistry.touch(1L);
+
+    // when -> the first flush runs in a transaction that never commits
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      presenceRegistry.flush();
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    presenceRegistry.flush();
+    presenceRegistry.flush();
+
+    // then -> the status is written again, and only once it was committed
+    // nothing is left to write
+    Mockito.verify(userRepository, Mockito.times(2)).updateStatus(Collections.singletonList(1L), UserStatus.ONLINE);
+  }
+
+  @Test
+  public void touchAndFlush_statusTransitions_publishedOncePerChange() {
+    // given
+    presenceRegistry.touch(1L);
+    presenceRegistry.touch(1L);
+    presenceRegistry.flush();
+
+    // when
+    now.addAndGet(TIMEOUT.toMillis());
+    presenceRegistry.flush();
+
+    // then -> one event for coming online, one for timing out
+    ArgumentCaptor<UserEvent> events = ArgumentCaptor.forClass(UserEvent.class);
+    Mockito.verify(eventPublisher, Mockito.times(2)).publishEvent(events.capture());
+    assertEquals(UserStatus.ONLINE, events.getAllValues().get(0).getStatus());
+    assertEquals(UserStatus.OFFLINE, events.getAllValues().get(1).getStatus());
+    assertEquals(UserEventType.STATUS_CHANGED, events.getAllValues().get(1).getType());
+  }
+
+  @Test
+  public void touch_duringFlushOfOfflineUser_notLost() {
+    // given -> the user is offline and persisted as such, the next flush
+    // would drop the entry
+    AtomicBoolean flushOnNextTick = new AtomicBoolean();
+    presenceRegistry = new PresenceRegistry(userRepository, eventPublisher, TIMEOUT, () -> {
+      if (flushOnNextTick.getAndSet(false)) {
+        presenceRegistry.flush();
+      }
+      return now.get();
+    });
+    presenceRegistry.touch(1L);
+    presenceRegistry.flush();
+    now.addAndGet(TIMEOUT.toMillis());
+    presenceRegistry.flush();
+
+    // when -> the flush runs while the heartbeat is being recorded
+    flushOnNextTick.set(true);
+    presenceRegistry.touch(1L);
+
+    // then
+    assertEquals(UserStatus.ONLINE, presenceRegistry.statusOf(1L));
+    assertEquals(1, presenceRegistry.size());
+  }
+}
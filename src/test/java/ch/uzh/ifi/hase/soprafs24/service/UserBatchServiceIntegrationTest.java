@@ -0,0 +1,121 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.BatchItemStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the bulk user import.
+ *
+ * @see UserBatchService
+ */
+@WebAppConfiguration
+@SpringBootTest(properties = "users.batch.chunk-size=2")
+public class UserBatchServiceIntegrationTest {
+
+  @Qualifier("userRepository")
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private UserBatchService userBatchService;
+
+  @BeforeEach
+  public void setup() {
+    userRepository.deleteAll();
+  }
+
+  private static User newUser(String username, String password) {
+    User user = new User();
+    user.setName("name of " + username);
+    user.setUsername(username);
+    user.setPassword(password);
+    return user;
+  }
+
+  @Test
+  public void createUsers_mixedInput_reportsEveryItem() {
+    // given -> one username is already taken
+    userService.createUser(newUser("existing", "testPassword"));
+
+    List<User> newUsers = Arrays.asList(
+        newUser("first", "testPassword"),
+        newUser("existing", "testPassword"),
+        newUser("second", null),
+        newUser("first", "testPassword"),
+        newUser("third", "testPassword"));
+
+    // when
+    List<UserBatchResult> results = userBatchService.createUsers(newUsers);
+
+    // then
+    assertEquals(5, results.size());
+    assertEquals(BatchItemStatus.CREATED, results.get(0).getStatus());
+    assertEquals(BatchItemStatus.CONFLICT, results.get(1).getStatus());
+    assertEquals(BatchItemStatus.INVALID, results.get(2).getStatus());
+    assertEquals(BatchItemStatus.CONFLICT, results.get(3).getStatus());
+    assertEquals(BatchItemStatus.CREATED, results.get(4).getStatus());
+
+    assertNotNull(results.get(0).getUser().getId());
+    assertNotNull(results.get(0).getUser().getToken());
+    assertEquals(3, userRepository.count());
+    assertNotNull(userRepository.findByUsername("third"));
+  }
+
+  @Test
+  public void createUsers_manyChunks_createsAll() {
+    // given
+    List<User> newUsers = new ArrayList<>();
+    for (int i = 0; i < 7; i++) {
+      newUsers.add(newUser("username" + i, "testPassword"));
+    }
+
+    // when
+    List<UserBatchResult> results = userBatchService.createUsers(newUsers);
+
+    // then
+    for (int i = 0; i < results.size(); i++) {
+      assertEquals(i, results.get(i).getIndex());
+      assertEquals(BatchItemStatus.CREATED, results.get(i).getStatus());
+    }
+    assertEquals(7, userRepository.count());
+  }
+
+  @Test
+  public void createUsers_rowWithoutName_reportedWithoutUndoingOtherChunks() {
+    // given -> the name-less row is in the second chunk
+    User nameless = newUser("nameless", "testPassword");
+    nameless.setName(null);
+    List<User> newUsers = Arrays.asList(
+        newUser("first", "testPassword"),
+        newUser("second", "testPassword"),
+        nameless,
+        newUser("third", "testPassword"));
+
+    // when
+    List<UserBatchResult> results = userBatchService.createUsers(newUsers);
+
+    // then
+    assertEquals(BatchItemStatus.CREATED, results.get(0).getStatus());
+    assertEquals(BatchItemStatus.CREATED, results.get(1).getStatus());
+    assertEquals(BatchItemStatus.INVALID, results.get(2).getStatus());
+    assertEquals(BatchItemStatus.CREATED, results.get(3).getStatus());
+    assertEquals(3, userRepository.count());
+    assertNull(userRepository.findByUsername("nameless"));
+  }
+}
@@ -0,0 +1,87 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.BatchItemStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * UserBatchServiceTest
+ * Tests the row by row retry of a chunk that runs into the unique constraint
+ * although its usernames were free when they were checked.
+ */
+public class UserBatchServiceTest {
+
+  private UserRepository userRepository;
+
+  private PlatformTransactionManager transactionManager;
+
+  private UserBatchService userBatchService;
+
+  // what the last saveAll() would have inserted
+  private List<User> pendingUsers;
+
+  @BeforeEach
+  public void setup() {
+    userRepository = Mockito.mock(UserRepository.class);
+    transactionManager = Mockito.mock(PlatformTransactionManager.class);
+    PasswordHasher passwordHasher = new PasswordHasher(4, 1, 16, Duration.ofSeconds(5));
+    userBatchService = new UserBatchService(userRepository, transactionManager, passwordHasher,
+        Mockito.mock(ApplicationEventPublisher.class), 10);
+
+    // the check finds nothing, "taken" is inserted by someone else right after it
+    Mockito.when(userRepository.findExistingUsernames(Mockito.any())).thenReturn(Collections.emptySet());
+    Mockito.when(userRepository.saveAll(Mockito.anyList())).thenAnswer(invocation -> {
+      pendingUsers = new ArrayList<>(invocation.getArgument(0));
+      return pendingUsers;
+    });
+    Mockito.doAnswer(invocation -> {
+      for (User user : pendingUsers) {
+        if ("taken".equals(user.getUsername())) {
+          throw new DataIntegrityViolationException("could not execute batch",
+              new SQLException("Unique index or primary key violation: UK_USERS_USERNAME", "23505"));
+        }
+      }
+      return null;
+    }).when(userRepository).flush();
+  }
+
+  @Test
+  public void createUsers_usernameTakenConcurrently_onlyThatItemConflicts() {
+    // given
+    List<User> newUsers = Arrays.asList(newUser("first"), newUser("taken"), newUser("second"));
+
+    // when
+    List<UserBatchResult> results = userBatchService.createUsers(newUsers);
+
+    // then -> the chunk was rolled back once and inserted again row by row
+    assertEquals(BatchItemStatus.CREATED, results.get(0).getStatus());
+    assertEquals(BatchItemStatus.CONFLICT, results.get(1).getStatus());
+    assertEquals(BatchItemStatus.CREATED, results.get(2).getStatus());
+    Mockito.verify(transactionManager, Mockito.times(2)).rollback(Mockito.any());
+    Mockito.verify(transactionManager, Mockito.times(2)).commit(Mockito.any());
+  }
+
+  private static User newUser(String username) {
+    User user = new User();
+    user.setName("name of " + username);
+    user.setUsername(username);
+    user.setPassword("testPassword");
+    return user;
+  }
+}
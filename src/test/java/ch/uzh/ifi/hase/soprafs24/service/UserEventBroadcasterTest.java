@@ -0,0 +1,139 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * UserEventBroadcasterTest
+ * Opens real server-sent event streams against a minimal controller and checks
+ * the resumption from a Last-Event-ID.
+ */
+public class UserEventBroadcasterTest {
+
+  private static final Pattern EVENT_ID = Pattern.compile("^id:(\\d+)$", Pattern.MULTILINE);
+
+  private UserEventBroadcaster broadcaster;
+
+  private MockMvc mockMvc;
+
+  @RestController
+  static class EventController {
+
+    private final UserEventBroadcaster broadcaster;
+
+    EventController(UserEventBroadcaster broadcaster) {
+      this.broadcaster = broadcaster;
+    }
+
+    @GetMapping("/events")
+    public SseEmitter events(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+      return broadcaster.subscribe(lastEventId);
+    }
+  }
+
+  @BeforeEach
+  public void setup() {
+    broadcaster = new UserEventBroadcaster(4, 16, Duration.ofMinutes(1), 2, 16);
+    mockMvc = MockMvcBuilders.standaloneSetup(new EventController(broadcaster)).build();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    broadcaster.shutdown();
+  }
+
+  @Test
+  public void subscribe_withLastEventId_replaysMissedEvents() throws Exception {
+    // given
+    MvcResult firstStream = open(null);
+    broadcaster.publish(UserEvent.statusChanged(1L, UserStatus.ONLINE));
+    broadcaster.publish(UserEvent.statusChanged(2L, UserStatus.ONLINE));
+    broadcaster.publish(UserEvent.statusChanged(3L, UserStatus.ONLINE));
+    List<String> ids = awaitEventIds(firstStream, 3);
+
+    // when -> the client reconnects after having received the first event only
+    MvcResult resumedStream = open(Long.parseLong(ids.get(0)));
+
+    // then
+    assertEquals(ids.subList(1, 3), awaitEventIds(resumedStream, 2));
+    assertTrue(resumedStream.getResponse().getContentAsString().contains("event:STATUS_CHANGED"));
+  }
+
+  @Test
+  public void subscribe_lastEventIdOutsideHistory_sendsReset() throws Exception {
+    // given -> more events than the history keeps
+    MvcResult firstStream = open(null);
+    for (long userId = 1; userId <= 6; userId++) {
+      broadcaster.publish(UserEvent.statusChanged(userId, UserStatus.ONLINE));
+    }
+    List<String> ids = awaitEventIds(firstStream, 6);
+
+    // when
+    MvcResult resumedStream = open(Long.parseLong(ids.get(0)));
+
+    // then -> the client has to reload, it continues after the newest event
+    assertEquals(ids.subList(5, 6), awaitEventIds(resumedStream, 1));
+    assertTrue(resumedStream.getResponse().getContentAsString().contains("event:" + UserEventBroadcaster.RESET_EVENT));
+  }
+
+  @Test
+  public void subscribe_unknownLastEventId_sendsReset() throws Exception {
+    // when -> an id of a previous server run
+    MvcResult stream = open(1L);
+
+    // then
+    awaitEventIds(stream, 1);
+    assertTrue(stream.getResponse().getContentAsString().contains("event:" + UserEventBroadcaster.RESET_EVENT));
+  }
+
+  private MvcResult open(Long lastEventId) throws Exception {
+    MockHttpServletRequestBuilder getRequest = get("/events");
+    if (lastEventId != null) {
+      getRequest.header("Last-Event-ID", lastEventId);
+    }
+    return mockMvc.perform(getRequest).andExpect(request().asyncStarted()).andReturn();
+  }
+
+  /**
+   * Waits until the stream received the given number of events and returns
+   * their ids.
+   */
+  private static List<String> awaitEventIds(MvcResult stream, int count) throws Exception {
+    long deadline = System.currentTimeMillis() + 5_000;
+    List<String> ids = new ArrayList<>();
+    while (System.currentTimeMillis() < deadline) {
+      ids.clear();
+      Matcher matcher = EVENT_ID.matcher(stream.getResponse().getContentAsString());
+      while (matcher.find()) {
+        ids.add(matcher.group(1));
+      }
+      if (ids.size() >= count) {
+        break;
+      }
+      Thread.sleep(10);
+    }
+    assertEquals(count, ids.size());
+    return ids;
+  }
+}
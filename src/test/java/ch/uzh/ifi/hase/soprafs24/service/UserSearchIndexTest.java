@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * UserSearchIndexTest
+ * Tests prefix and fuzzy matching, the ranking and incremental updates of the
+ * search index without a database.
+ */
+public class UserSearchIndexTest {
+
+  private UserSearchIndex userSearchIndex;
+
+  @BeforeEach
+  public void setup() {
+    userSearchIndex = new UserSearchIndex(null);
+    userSearchIndex.index(1L, "johnny", "John Smith");
+    userSearchIndex.index(2L, "john", "Jonathan Miller");
+    userSearchIndex.index(3L, "alice", "Alice Johnson");
+    userSearchIndex.index(4L, "bob", "Robert Brown");
+  }
+
+  @Test
+  public void search_prefix_caseInsensitiveAndRanked() {
+    // when
+    List<Long> ids = idsOf(userSearchIndex.search("JOHN", 10));
+
+    // then -> exact username first, then the username prefix, then the name prefix
+    assertEquals(List.of(2L, 1L, 3L), ids);
+  }
+
+  @Test
+  public void search_typo_fuzzyMatch() {
+    // when
+    List<Long> ids = idsOf(userSearchIndex.search("robrt", 10));
+
+    // then
+    assertEquals(List.of(4L), ids);
+  }
+
+  @Test
+  public void search_typoAmongManyPartialMatches_closestUserScored() {
+    // given -> more users share one or two trigrams with the query than are
+    // scored, the target was indexed last and shares four
+    for (long id = 100; id < 1_200; id++) {
+      userSearchIndex.index(id, "naq" + id, null);
+      userSearchIndex.index(id + 10_000, "qnat" + id, null);
+      userSearchIndex.index(id + 20_000, "qath" + id, null);
+    }
+    userSearchIndex.index(99_999L, "nathen", null);
+
+    // when
+    List<Long> ids = idsOf(userSearchIndex.search("nathan", 10));
+
+    // then
+    assertTrue(ids.contains(99_999L));
+  }
+
+  @Test
+  public void search_limit_returnsTopK() {
+    // when
+    List<Long> ids = idsOf(userSearchIndex.search("john", 2));
+
+    // then
+    assertEquals(List.of(2L, 1L), ids);
+  }
+
+  @Test
+  public void index_renamedUser_oldUsernameNotFound() {
+    // when
+    userSearchIndex.index(4L, "bobby", "Robert Brown");
+
+    // then
+    assertTrue(userSearchIndex.search("bob", 10).stream().allMatch(hit -> "bobby".equals(hit.getUsername())));
+    assertEquals(List.of(4L), idsOf(userSearchIndex.search("bobby", 10)));
+    assertEquals(4, userSearchIndex.size());
+  }
+
+  @Test
+  public void remove_userNotFound() {
+    // when
+    userSearchIndex.remove(3L);
+
+    // then
+    assertTrue(userSearchIndex.search("alice", 10).isEmpty());
+  }
+
+  private static List<Long> idsOf(List<UserSearchHit> hits) {
+    return hits.stream().map(UserSearchHit::getId).collect(Collectors.toList());
+  }
+}
@@ -2,18 +2,33 @@
 
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UniqueConstraintViolations;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserModifiedException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserSummary;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.web.WebAppConfiguration;
-import org.springframework.web.server.ResponseStatusException;
 
+import static ch.uzh.ifi.hase.soprafs24.metrics.SqlStatements.assertStatementCount;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Test class for the UserResource REST resource.
@@ -31,6 +46,9 @@ public class UserServiceIntegrationTest {
   @Autowired
   private UserService userService;
 
+  @Autowired
+  private PresenceRegistry presenceRegistry;
+
   @BeforeEach
   public void setup() {
     userRepository.deleteAll();
@@ -73,9 +91,63 @@ public class UserServiceIntegrationTest {
     // change the name but forget about the username
     testUser2.setName("testName2");
     testUser2.setUsername("testUsername");
+    testUser2.setPassword("testPassword");
+
+    // check that the unique constraint rejects the second user
+    DataIntegrityViolationException exception = assertThrows(DataIntegrityViolationException.class,
+        () -> userService.createUser(testUser2));
+    assertTrue(UniqueConstraintViolations.violates(exception, User.USERNAME_CONSTRAINT));
+    assertEquals(1, userRepository.count());
+  }
+
+  @Test
+  public void createUser_concurrentDuplicates_oneCreatedOthersConflict() throws Exception {
+    // given -> every thread tries to create the same usernames at the same time
+    int threads = 8;
+    List<String> usernames = Arrays.asList("first", "second", "third", "fourth");
+    AtomicInteger created = new AtomicInteger();
+    AtomicInteger conflicts = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
 
-    // check that an error is thrown
-    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser2));
+    // when
+    try {
+      List<Future<?>> attempts = new ArrayList<>(threads);
+      for (int thread = 0; thread < threads; thread++) {
+        attempts.add(executor.submit(() -> {
+          start.await();
+          for (String username : usernames) {
+            User testUser = new User();
+            testUser.setName("testName");
+            testUser.setUsername(username);
+            testUser.setPassword("testPassword");
+            try {
+              userService.createUser(testUser);
+              created.incrementAndGet();
+            } catch (DataIntegrityViolationException e) {
+              // anything but the username constraint fails the attempt below
+              if (!UniqueConstraintViolations.violates(e, User.USERNAME_CONSTRAINT)) {
+                throw e;
+              }
+              conflicts.incrementAndGet();
+            }
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> attempt : attempts) {
+        attempt.get();
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    // then -> no duplicates, and every other attempt was answered with a conflict
+    assertEquals(usernames.size(), created.get());
+    assertEquals((threads - 1) * usernames.size(), conflicts.get());
+    assertEquals(usernames.size(), userRepository.count());
   }
 
   @Test
@@ -103,7 +175,7 @@ public class UserServiceIntegrationTest {
   @Test
   public void getUserById_invalidId_throwsException() {
     // given/when/then
-    assertThrows(ResponseStatusException.class, () -> userService.getUserById(9999L));
+    assertThrows(UserNotFoundException.class, () -> userService.getUserById(9999L));
   }
 
   @Test
@@ -129,7 +201,7 @@ public class UserServiceIntegrationTest {
     User loggedInUser = userService.loginUser(loginUser);
 
     // then
-    assertEquals(UserStatus.ONLINE, loggedInUser.getStatus());
+    assertEquals(UserStatus.ONLINE, presenceRegistry.statusOf(loggedInUser.getId()));
     assertEquals(createdUser.getId(), loggedInUser.getId());
   }
 
@@ -151,7 +223,7 @@ public class UserServiceIntegrationTest {
     updateUser.setBirthday(birthday);
 
     // when
-    userService.updateUser(createdUser.getId(), updateUser, createdUser.getToken());
+    userService.updateUser(createdUser.getId(), updateUser, UserPrincipal.of(createdUser));
 
 
     // then
@@ -159,4 +231,155 @@ public class UserServiceIntegrationTest {
     assertEquals("newUsername", updatedUser.getUsername());
     assertEquals(birthday, updatedUser.getBirthday());
   }
+
+  @Test
+  public void getUsers_keysetPagination_returnsConsecutivePages() {
+    // given
+    for (int i = 0; i < 3; i++) {
+      User testUser = new User();
+      testUser.setName("testName" + i);
+      testUser.setUsername("testUsername" + i);
+      testUser.setPassword("testPassword");
+      userService.createUser(testUser);
+    }
+
+    // when
+    List<UserSummary> firstPage = userService.getUsers(null, 2);
+    List<UserSummary> secondPage = userService.getUsers(firstPage.get(1).getId(), 2);
+
+    // then
+    assertEquals(2, firstPage.size());
+    assertEquals("testUsername0", firstPage.get(0).getUsername());
+    assertEquals("testUsername1", firstPage.get(1).getUsername());
+    assertEquals(1, secondPage.size());
+    assertEquals("testUsername2", secondPage.get(0).getUsername());
+  }
+
+  @Test
+  public void streamUsers_returnsAllUsersInIdOrder() {
+    // given
+    User first = new User();
+    first.setName("firstName");
+    first.setUsername("firstUsername");
+    first.setPassword("testPassword");
+    User createdFirst = userService.createUser(first);
+
+    User second = new User();
+    second.setName("secondName");
+    second.setUsername("secondUsername");
+    second.setPassword("testPassword");
+    User createdSecond = userService.createUser(second);
+
+    // when
+    List<User> streamed = new ArrayList<>();
+    userService.streamUsers(streamed::add);
+
+    // then
+    assertEquals(2, streamed.size());
+    assertEquals(createdFirst.getId(), streamed.get(0).getId());
+    assertEquals(createdSecond.getId(), streamed.get(1).getId());
+    assertEquals("secondUsername", streamed.get(1).getUsername());
+    assertEquals(createdSecond.getStatus(), streamed.get(1).getStatus());
+    assertNull(streamed.get(1).getPassword());
+  }
+
+  @Test
+  public void updateUser_staleVersion_throwsException() {
+    // given
+    User testUser = new User();
+    testUser.setName("testName");
+    testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
+    User createdUser = userService.createUser(testUser);
+    Long createdVersion = createdUser.getVersion();
+
+    User firstUpdate = new User();
+    firstUpdate.setBirthday(new Date());
+    User updatedUser = userService.updateUser(createdUser.getId(), firstUpdate, UserPrincipal.of(createdUser),
+        createdVersion);
+
+    // when/then -> a second client still holds the version it read before the first update
+    User secondUpdate = new User();
+    secondUpdate.setUsername("otherUsername");
+    assertNotEquals(createdVersion, updatedUser.getVersion());
+    UserModifiedException exception = assertThrows(UserModifiedException.class,
+        () -> userService.updateUser(createdUser.getId(), secondUpdate, UserPrincipal.of(createdUser), createdVersion));
+    assertEquals(412, exception.getStatus().value());
+    assertEquals("testUsername", userService.getUserById(createdUser.getId()).getUsername());
+  }
+
+  @Test
+  public void loginUser_validCredentials_oneStatement() {
+    // given
+    User testUser = new User();
+    testUser.setName("testName");
+    testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
+    userService.createUser(testUser);
+
+    User loginUser = new User();
+    loginUser.setUsername("testUsername");
+    loginUser.setPassword("testPassword");
+
+    // when/then -> the username lookup only, the status is not written on login
+    assertStatementCount(1, () -> userService.loginUser(loginUser));
+  }
+
+  @Test
+  public void updateUser_birthdayOnly_twoStatements() {
+    // given
+    User testUser = new User();
+    testUser.setName("testName");
+    testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
+    User createdUser = userService.createUser(testUser);
+
+    User updateUser = new User();
+    updateUser.setBirthday(new Date());
+
+    // when/then -> the caller is already authenticated: one SELECT, one UPDATE
+    UserPrincipal principal = UserPrincipal.of(createdUser);
+    assertStatementCount(2, () -> userService.updateUser(createdUser.getId(), updateUser, principal));
+  }
+
+  @Test
+  public void updateUser_rename_twoStatements() {
+    // given
+    User testUser = new User();
+    testUser.setName("testName");
+    testUser.setUsername("testUsername");
+    testUser.setPassword("testPassword");
+    User createdUser = userService.createUser(testUser);
+
+    User updateUser = new User();
+    updateUser.setUsername("newUsername");
+
+    // when/then -> one SELECT, one UPDATE, no probe for the new username
+    UserPrincipal principal = UserPrincipal.of(createdUser);
+    assertStatementCount(2, () -> userService.updateUser(createdUser.getId(), updateUser, principal));
+  }
+
+  @Test
+  public void updateUser_takenUsername_throwsException() {
+    // given
+    User first = new User();
+    first.setName("firstName");
+    first.setUsername("firstUsername");
+    first.setPassword("testPassword");
+    userService.createUser(first);
+
+    User second = new User();
+    second.setName("secondName");
+    second.setUsername("secondUsername");
+    second.setPassword("testPassword");
+    User createdSecond = userService.createUser(second);
+
+    User updateUser = new User();
+    updateUser.setUsername("firstUsername");
+
+    // when/then
+    assertThrows(DataIntegrityViolationException.class,
+        () -> userService.updateUser(createdSecond.getId(), updateUser, UserPrincipal.of(createdSecond)));
+    assertEquals("secondUsername", userService.getUserById(createdSecond.getId()).getUsername());
+  }
 }
@@ -1,17 +1,34 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 import ch.uzh.ifi.hase.soprafs24.constant.UserStatus;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.InvalidCredentialsException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.NotProfileOwnerException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.UserNotFoundException;
+import ch.uzh.ifi.hase.soprafs24.repository.RevokedTokenRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.security.PasswordHasher;
+import ch.uzh.ifi.hase.soprafs24.security.SignedTokens;
+import ch.uzh.ifi.hase.soprafs24.security.TokenRevocationList;
+import ch.uzh.ifi.hase.soprafs24.security.UserPrincipal;
+import ch.uzh.ifi.hase.soprafs24.security.UserTokenCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.web.server.ResponseStatusException;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Date;
 import java.util.Optional;
 import static org.mockito.ArgumentMatchers.any;
@@ -25,6 +42,25 @@ public class UserServiceTest {
   @Mock
   private UserRepository userRepository;
 
+  @Mock
+  private PresenceRegistry presenceRegistry;
+
+  @Mock
+  private ApplicationEventPublisher eventPublisher;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Spy
+  private UserTokenCache tokenCache = new UserTokenCache(100, Duration.ofMinutes(1), 100, Duration.ofSeconds(10));
+
+  @Spy
+  private PasswordHasher passwordHasher = new PasswordHasher(4, 1, 8, Duration.ofSeconds(5));
+
+  @Spy
+  private SignedTokens signedTokens = new SignedTokens(true, "", Duration.ofHours(1),
+      new TokenRevocationList(Mockito.mock(RevokedTokenRepository.class)));
+
   @InjectMocks
   private UserService userService;
 
@@ -64,6 +100,25 @@ public class UserServiceTest {
     assertEquals(UserStatus.ONLINE, createdUser.getStatus());
   }
 
+  @Test
+  public void createUser_inTransaction_comesOnlineAfterCommit() {
+    // given
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      // when
+      userService.createUser(testUser);
+
+      // then -> nobody hears of the user before the transaction committed
+      Mockito.verify(presenceRegistry, Mockito.never()).touch(Mockito.any());
+      for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+        synchronization.afterCommit();
+      }
+      Mockito.verify(presenceRegistry, Mockito.times(1)).touch(testUser.getId());
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
   //@Test
    //public void createUser_duplicateName_throwsException() {
    // given -> a first user has already been created
@@ -90,23 +145,19 @@ public class UserServiceTest {
 
   @Test
   public void createUser_duplicateInputs_throwsException() {
-    // given -> a first user has already been created
-    testUser.setName("testName");
-    testUser.setUsername("testUsername");
-    userService.createUser(testUser);
-
-    // when -> setup additional mocks for UserRepository
-    Mockito.when(userRepository.findByName(Mockito.any())).thenReturn(testUser);
-    Mockito.when(userRepository.findByUsername(Mockito.any())).thenReturn(testUser);
+    // given -> the username is taken, the insert violates the unique constraint
+    Mockito.when(userRepository.save(Mockito.any())).thenThrow(new DataIntegrityViolationException("duplicate",
+        new SQLException("duplicate key value violates unique constraint \"uk_users_username\"", "23505")));
 
     User testUser2 = new User();
     testUser2.setName("testName");
     testUser2.setUsername("testUsername");
     testUser2.setPassword("testPassword");
 
-    // then -> attempt to create second user with same user -> check that an error
-    // is thrown
-    assertThrows(ResponseStatusException.class, () -> userService.createUser(testUser2));
+    // when/then -> no probe for the username, the violation is passed on and nothing is announced
+    assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(testUser2));
+    Mockito.verify(userRepository, Mockito.never()).findByUsername(Mockito.any());
+    Mockito.verify(eventPublisher, Mockito.never()).publishEvent(Mockito.any(Object.class));
   }
 
   @Test
@@ -128,14 +179,17 @@ public class UserServiceTest {
     // given
     Mockito.when(userRepository.findById(Mockito.anyLong())).thenReturn(java.util.Optional.empty());
 
-    // when/then
-    assertThrows(ResponseStatusException.class, () -> userService.getUserById(1L));
+    // when/then -> an expected outcome, thrown without a stack trace
+    UserNotFoundException exception = assertThrows(UserNotFoundException.class, () -> userService.getUserById(1L));
+    assertEquals(404, exception.getStatus().value());
+    assertEquals("User with ID 1 was not found", exception.getMessage());
+    assertEquals(0, exception.getStackTrace().length);
   }
 
   @Test
   public void loginUser_validCredentials_success() {
     // given
-    testUser.setPassword("correctPassword");
+    testUser.setPassword(passwordHasher.hash("correctPassword"));
     testUser.setStatus(UserStatus.OFFLINE);
 
     User loginUser = new User();
@@ -148,16 +202,41 @@ public class UserServiceTest {
     // when
     User loggedInUser = userService.loginUser(loginUser);
 
-    // then
-    assertEquals(UserStatus.ONLINE, loggedInUser.getStatus());
-    Mockito.verify(userRepository, Mockito.times(1)).save(Mockito.any(User.class));
-    Mockito.verify(userRepository, Mockito.times(1)).flush();
+    // then -> the login is recorded in the presence registry, the row is not written
+    assertEquals(testUser.getId(), loggedInUser.getId());
+    Mockito.verify(presenceRegistry, Mockito.times(1)).touch(testUser.getId());
+    Mockito.verify(userRepository, Mockito.never()).save(Mockito.any(User.class));
+    Mockito.verify(userRepository, Mockito.never()).flush();
+  }
+
+  @Test
+  public void loginUser_validCredentials_verifiesOutsideTransaction() {
+    // given
+    testUser.setPassword(passwordHasher.hash("correctPassword"));
+
+    User loginUser = new User();
+    loginUser.setUsername("testUsername");
+    loginUser.setPassword("correctPassword");
+
+    Mockito.when(userRepository.findByUsername(testUser.getUsername())).thenReturn(testUser);
+
+    // when
+    userService.loginUser(loginUser);
+
+    // then -> the hash is read on the primary in a transaction of its own,
+    // bcrypt runs after it
+    InOrder inOrder = Mockito.inOrder(userRepository, transactionManager, passwordHasher);
+    inOrder.verify(userRepository).findByUsername(testUser.getUsername());
+    inOrder.verify(transactionManager).commit(Mockito.any());
+    inOrder.verify(passwordHasher).matches(Mockito.eq("correctPassword"), Mockito.anyString());
+    Mockito.verify(transactionManager, Mockito.times(1)).getTransaction(Mockito.any());
+    Mockito.verify(transactionManager).getTransaction(Mockito.argThat(definition -> !definition.isReadOnly()));
   }
 
   @Test
   public void loginUser_wrongPassword_throwsException() {
     // given
-    testUser.setPassword("correctPassword");
+    testUser.setPassword(passwordHasher.hash("correctPassword"));
 
     User loginUser = new User();
     loginUser.setUsername("testUsername");
@@ -166,7 +245,9 @@ public class UserServiceTest {
     Mockito.when(userRepository.findByUsername(testUser.getUsername())).thenReturn(testUser);
 
     // when/then
-    assertThrows(ResponseStatusException.class, () -> userService.loginUser(loginUser));
+    InvalidCredentialsException exception = assertThrows(InvalidCredentialsException.class,
+        () -> userService.loginUser(loginUser));
+    assertEquals(401, exception.getStatus().value());
   }
 
   @Test
@@ -179,17 +260,124 @@ public class UserServiceTest {
     updateUser.setBirthday(new Date());
 
     Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(testUser)); 
-    Mockito.when(userRepository.findByUsername("newUsername")).thenReturn(null);
     Mockito.when(userRepository.save(Mockito.any(User.class))).thenReturn(testUser);
     
     // when
-    userService.updateUser(testUser.getId(), updateUser, testUser.getToken());
+    userService.updateUser(testUser.getId(), updateUser, UserPrincipal.of(testUser));
 
-    // then
+    // then -> the managed user is changed in place and flushed for the unique
+    // constraint on the username, there is no probe for the new username
     assertEquals("newUsername", testUser.getUsername());
     assertNotNull(testUser.getBirthday());
-    Mockito.verify(userRepository, Mockito.times(1)).save(Mockito.any(User.class));
+    Mockito.verify(userRepository, Mockito.never()).save(Mockito.any(User.class));
     Mockito.verify(userRepository, Mockito.times(1)).flush();
+    Mockito.verify(userRepository, Mockito.never()).findByUsername(Mockito.any());
+    Mockito.verify(userRepository, Mockito.times(1)).findById(testUser.getId());
+    Mockito.verify(eventPublisher, Mockito.times(1)).publishEvent(Mockito.any(UserEvent.class));
+  }
+
+  @Test
+  public void updateUser_takenUsername_throwsException() {
+    // given
+    User updateUser = new User();
+    updateUser.setUsername("takenUsername");
+
+    Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(testUser));
+    Mockito.doThrow(new DataIntegrityViolationException("duplicate",
+        new SQLException("duplicate key value violates unique constraint \"uk_users_username\"", "23505")))
+        .when(userRepository).flush();
+
+    // when/then
+    assertThrows(DataIntegrityViolationException.class,
+        () -> userService.updateUser(testUser.getId(), updateUser, UserPrincipal.of(testUser)));
+    Mockito.verify(eventPublisher, Mockito.never()).publishEvent(Mockito.any(Object.class));
+  }
+
+  @Test
+  public void updateUser_unchangedInput_noEventPublished() {
+    // given
+    User updateUser = new User();
+    updateUser.setUsername(testUser.getUsername());
+
+    Mockito.when(userRepository.findById(anyLong())).thenReturn(Optional.of(testUser));
+
+    // when
+    userService.updateUser(testUser.getId(), updateUser, UserPrincipal.of(testUser));
+
+    // then
+    Mockito.verify(eventPublisher, Mockito.never()).publishEvent(Mockito.any(Object.class));
+  }
+
+  @Test
+  public void createUser_validInputs_storesPasswordHash() {
+    // when
+    User createdUser = userService.createUser(testUser);
+
+    // then
+    assertNotEquals("testPassword", createdUser.getPassword());
+    assertTrue(passwordHasher.matches("testPassword", createdUser.getPassword()));
+  }
+
+  @Test
+  public void loginUser_weakHash_isUpgraded() {
+    // given -> the stored hash was made with a lower work factor than configured
+    String weakHash = new PasswordHasher(4, 1, 8, Duration.ofSeconds(5)).hash("correctPassword");
+    testUser.setPassword(weakHash);
+    PasswordHasher strongerHasher = new PasswordHasher(5, 1, 8, Duration.ofSeconds(5));
+    UserService upgradingService = new UserService(userRepository, null, tokenCache, strongerHasher,
+        signedTokens, presenceRegistry, eventPublisher, transactionManager);
+
+    User loginUser = new User();
+    loginUser.setUsername("testUsername");
+    loginUser.setPassword("correctPassword");
+
+    Mockito.when(userRepository.findByUsername(testUser.getUsername())).thenReturn(testUser);
+    Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // when
+    upgradingService.loginUser(loginUser);
+
+    // then
+    assertNotEquals(weakHash, testUser.getPassword());
+    assertFalse(strongerHasher.needsRehash(testUser.getPassword()));
+    assertTrue(strongerHasher.matches("correctPassword", testUser.getPassword()));
+  }
+
+  @Test
+  public void updateUser_foreignPrincipal_throwsException() {
+    // given -> the caller is another user
+    UserPrincipal otherPrincipal = new UserPrincipal(2L, "otherUsername", "other-token");
+
+    // when/then
+    NotProfileOwnerException exception = assertThrows(NotProfileOwnerException.class,
+        () -> userService.updateUser(1L, new User(), otherPrincipal));
+    assertEquals(403, exception.getStatus().value());
+    Mockito.verify(userRepository, Mockito.never()).findById(Mockito.any());
+  }
+
+  @Test
+  public void logoutUser_signedToken_isRevoked() {
+    // given
+    String signedToken = signedTokens.issue(testUser.getId());
+
+    // when
+    userService.logoutUser(signedTokens.verify(signedToken));
+
+    // then -> the token is refused from now on, the user row is not touched
+    assertNull(signedTokens.verify(signedToken));
+    Mockito.verify(userRepository, Mockito.never()).findById(Mockito.any());
   }
 
+  @Test
+  public void logoutUser_randomToken_isReplaced() {
+    // given
+    Mockito.when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // when
+    userService.logoutUser(UserPrincipal.of(testUser));
+
+    // then -> the old token is neither stored nor cached anymore
+    assertNotEquals("test-token", testUser.getToken());
+    Mockito.verify(tokenCache, Mockito.times(1)).invalidate("test-token");
+  }
 }